@@ -0,0 +1,130 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.philemonworks.writer.BufferOutput;
+import com.philemonworks.writer.Fragment;
+import com.philemonworks.writer.FragmentRecorder;
+import com.philemonworks.writer.HTMLWriter;
+import com.philemonworks.writer.Table;
+
+/**
+ * Measures rendering a prepared Table and a page header as HTML.
+ *
+ * @author E.M.Micklei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HTMLWriterBenchmark {
+    @Param({ "10", "1000" })
+    public int rows;
+    @Param({ "8" })
+    public int columns;
+    @Param({ "true", "false" })
+    public boolean pretty;
+
+    private Table table;
+    private BufferOutput output;
+    private HTMLWriter html;
+    private Fragment header;
+    private final Object[] headerValues = { "Report & summary", "report" };
+
+    @Setup
+    public void setUp() {
+        table = new Table();
+        for (int c = 1; c <= columns; c++)
+            table.put(1, c, "column " + c);
+        for (int r = 2; r <= rows; r++)
+            for (int c = 1; c <= columns; c++)
+                if ((r + c) % 7 != 0) // leave some cells empty
+                    table.put(r, c, r * c);
+        output = new BufferOutput(rows * columns * 64);
+        html = new HTMLWriter(output);
+        html.pretty = pretty;
+        FragmentRecorder recorder = new FragmentRecorder();
+        recorder.writer().pretty = pretty;
+        this.header(recorder.writer(), null, recorder);
+        header = recorder.build();
+    }
+
+    /**
+     * Write the page header; with a recorder, placeholders are recorded instead of the title and body class.
+     */
+    private void header(HTMLWriter writer, Object[] values, FragmentRecorder recorderOrNull) {
+        writer.doctype().html().head().noCacheMetaTags();
+        writer.stylesheet("/css/site.css");
+        if (recorderOrNull == null)
+            writer.title((String) values[0]);
+        else {
+            writer.tag("title");
+            recorderOrNull.text("title");
+            writer.end();
+        }
+        writer.end();
+        writer.opentag("body");
+        if (recorderOrNull == null)
+            writer.attribute("class", (String) values[1]);
+        else
+            recorderOrNull.attribute("class", "style");
+        writer.closetag();
+    }
+
+    @Benchmark
+    public int table() {
+        output.clear();
+        html.table(table);
+        return output.length();
+    }
+
+    /**
+     * Answer a new writer because the header leaves tags open.
+     */
+    private HTMLWriter newWriter() {
+        output.clear();
+        HTMLWriter writer = new HTMLWriter(output);
+        writer.pretty = pretty;
+        return writer;
+    }
+
+    @Benchmark
+    public int header() {
+        this.header(this.newWriter(), headerValues, null);
+        return output.length();
+    }
+
+    @Benchmark
+    public int headerFragment() {
+        this.newWriter().fragment(header, headerValues);
+        return output.length();
+    }
+}
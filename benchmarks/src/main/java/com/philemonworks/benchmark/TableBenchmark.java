@@ -0,0 +1,104 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.philemonworks.writer.BufferOutput;
+import com.philemonworks.writer.HTMLWriter;
+import com.philemonworks.writer.ParallelTableRenderer;
+import com.philemonworks.writer.Table;
+
+/**
+ * Measures filling, reading and rendering a Table.
+ *
+ * @author E.M.Micklei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+    @Param({ "100", "10000" })
+    public int rows;
+    @Param({ "10" })
+    public int columns;
+
+    private Table filled;
+    private ParallelTableRenderer renderer;
+    private BufferOutput output;
+
+    @Setup
+    public void setUp() {
+        filled = this.fill();
+        renderer = new ParallelTableRenderer(Runtime.getRuntime().availableProcessors());
+        output = new BufferOutput(1 << 20);
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    private Table fill() {
+        Table table = new Table();
+        for (int r = 1; r <= rows; r++)
+            for (int c = 1; c <= columns; c++)
+                table.put(r, c, "cell");
+        return table;
+    }
+
+    @Benchmark
+    public Table put() {
+        return this.fill();
+    }
+
+    @Benchmark
+    public void get(Blackhole hole) {
+        for (int r = 1; r <= rows; r++)
+            for (int c = 1; c <= columns; c++)
+                hole.consume(filled.get(r, c));
+    }
+
+    @Benchmark
+    public int render() {
+        output.clear();
+        new HTMLWriter(output).table(filled);
+        return output.length();
+    }
+
+    @Benchmark
+    public int renderParallel() {
+        output.clear();
+        renderer.table(new HTMLWriter(output), filled);
+        return output.length();
+    }
+}
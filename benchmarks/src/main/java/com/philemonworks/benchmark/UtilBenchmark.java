@@ -0,0 +1,140 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.philemonworks.util.Color;
+import com.philemonworks.util.NLS;
+import com.philemonworks.util.PropertiesAccess;
+import com.philemonworks.util.ToStringBuilder;
+
+/**
+ * Measures the helpers of the util package: ToStringBuilder, PropertiesAccess, NLS and Color.
+ *
+ * @author E.M.Micklei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+    /**
+     * Typical domain object that is logged using ToStringBuilder.
+     */
+    public static class Customer {
+        public String name = "Ernest";
+        public int age = 42;
+        public long id = 1234567890L;
+        public boolean active = true;
+        public double balance = 12.5;
+        public Date created = new Date(0);
+        public List orders = new ArrayList();
+        private String secret = "hidden";
+
+        public String getSecret() {
+            return secret;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(UtilBenchmark.class);
+
+    private Customer customer;
+    private ToStringBuilder typedBuilder;
+    private ToStringBuilder reflectiveBuilder;
+    private PropertiesAccess properties;
+    private Color color;
+
+    @Setup
+    public void setUp() {
+        customer = new Customer();
+        customer.orders.add("order");
+        typedBuilder = new ToStringBuilder();
+        reflectiveBuilder = new ToStringBuilder();
+        reflectiveBuilder.setTypedAccess(false);
+        LOG.setLevel(Level.INFO);
+        properties = new PropertiesAccess("benchmark.properties");
+        properties.get("title"); // load
+        color = new Color(255, 0, 255);
+    }
+
+    @Benchmark
+    public String toStringBuilder() {
+        return ToStringBuilder.build(customer);
+    }
+
+    @Benchmark
+    public String toStringBuilderTyped() {
+        return typedBuilder.buildFrom(customer, true, true, 0);
+    }
+
+    @Benchmark
+    public String toStringBuilderReflective() {
+        return reflectiveBuilder.buildFrom(customer, true, true, 0);
+    }
+
+    @Benchmark
+    public void logDisabledEager() {
+        LOG.debug(ToStringBuilder.build(customer));
+    }
+
+    @Benchmark
+    public void logDisabledLazy() {
+        LOG.debug(ToStringBuilder.lazy(customer));
+    }
+
+    @Benchmark
+    public String propertiesGet() {
+        return properties.get("title");
+    }
+
+    @Benchmark
+    public String nlsGet() {
+        return NLS.get("why");
+    }
+
+    @Benchmark
+    public String nlsFormat() {
+        return NLS.get("gt", new Object[] { "2", "1" });
+    }
+
+    @Benchmark
+    public Color colorDecode() {
+        return Color.decode("#FF00FF");
+    }
+
+    @Benchmark
+    public String colorToHTML() {
+        return color.toHTML();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.philemonworks.writer.BufferOutput;
+import com.philemonworks.writer.XMLWriter;
+
+/**
+ * Measures entity encoding of text of various sizes and markup densities.
+ *
+ * @author E.M.Micklei
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLWriterBenchmark {
+    /**
+     * Number of characters of the text to encode.
+     */
+    @Param({ "16", "1024", "65536" })
+    public int size;
+    /**
+     * plain: no characters to replace, markup: some delimiters, latin: accented characters
+     */
+    @Param({ "plain", "markup", "latin" })
+    public String content;
+
+    private String text;
+    private BufferOutput output;
+
+    @Setup
+    public void setUp() {
+        String sample;
+        if ("markup".equals(content))
+            sample = "if (a < b && c > d) say \"hello\"; ";
+        else if ("latin".equals(content))
+            sample = "Caf\u00e9 cr\u00e8me br\u00fbl\u00e9e f\u00fcr M\u00fcller. ";
+        else
+            sample = "The quick brown fox jumps over the lazy dog. ";
+        StringBuffer buffer = new StringBuffer(size);
+        while (buffer.length() < size)
+            buffer.append(sample);
+        text = buffer.substring(0, size);
+        output = new BufferOutput(size * 8);
+    }
+
+    @Benchmark
+    public void encodeOn(Blackhole hole) {
+        output.clear();
+        XMLWriter.encodeOn(text, output);
+        hole.consume(output.length());
+    }
+
+    @Benchmark
+    public String encoded() {
+        return XMLWriter.encoded(text);
+    }
+}
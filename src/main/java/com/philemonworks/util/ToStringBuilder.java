@@ -16,12 +16,19 @@
 */
 package com.philemonworks.util;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * ToStringBuilder is a generic Helper class that creates a String
@@ -32,25 +39,69 @@ import java.util.List;
  * Optionally, the builder can show fields for which the value cannot be
  * accessed through reflection or through a standard getter. In addition, the
  * builder can hide fields for which the value is null.
+ * <p>
+ * The fields of a class and their getters are looked up once and kept in a cache.
+ * The cache refers to its entries weakly so it does not prevent classes (and their class loaders)
+ * from being unloaded; an entry that is garbage collected is looked up again on next use.
+ * Primitive fields that can be read directly are appended using the typed Field accessors
+ * (getInt, getLong,...) so their values are not boxed; see setTypedAccess(..).
+ * <p>
+ * A builder keeps no state while building; once configured, one instance can be shared by threads.
+ * Nested objects (see recursionDepth) are appended to the same buffer. An object that is
+ * already being presented higher up in the same build is shown by reference (aClass@hash) only.
+ * <p>
+ * For logging, lazy(..) answers an object that builds the String only when its toString() is sent,
+ * i.e. when the message is actually rendered. Use setMaxLength(..) and setMaxFields(..) to bound
+ * the output; building stops as soon as a limit is reached and "..." marks the truncation.
+ * <p>
+ * Arrays are presented by element type and length (e.g. int[3]), collections by element type and
+ * size (e.g. String{2}) and maps by key and value type and size (e.g. String=Integer{2}).
+ * Use setPreviewSize(..) to add the first elements, e.g. int[3](1,2,3).
  * 
  * @author E.M.Micklei
  */
 public class ToStringBuilder {
     /**
-     * This controls whether private fields are included or not
+     * Maps a Class to a WeakReference to its ClassInfo. The values must be weak too
+     * because a ClassInfo refers to its Class through its Fields and Methods.
      */
-    boolean accessErrorOccurred = false;
+    private static final Map classInfos = new WeakHashMap();
+    private static final Class[] NO_PARAMETERS = new Class[0];
+    private static final Object[] NO_ARGUMENTS = new Object[0];
     /**
-     * This controls whether fields values (up to a reference depth) are also presented by the receiver 
+     * Used by the static build methods
      */
-    int depth = 0;
+    private static final ToStringBuilder DEFAULT = new ToStringBuilder();
+    /**
+     * Values shown for fields that could not be accessed
+     */
+    private static final AccessError SECURE = new AccessError("*secure*");
+    private static final AccessError NO_GETTER = new AccessError("*no getter*");
+    private static final AccessError ILLEGAL = new AccessError("*illegal*");
+    private static final AccessError ERROR = new AccessError("*error*");
+    /**
+     * Whether primitive fields are read using the typed Field accessors
+     */
+    private boolean typedAccess = true;
+    /**
+     * Maximum number of characters appended by one build, excluding the truncation mark
+     */
+    private int maxLength = Integer.MAX_VALUE;
+    /**
+     * Maximum number of fields presented per object
+     */
+    private int maxFields = Integer.MAX_VALUE;
+    /**
+     * Number of elements of arrays, collections and maps that are presented
+     */
+    private int previewSize = 0;
 
     /**
      * Return a String representing the full state of an Object by inspecting
      * all its fields.
      */
     public static String build(Object anObject) {
-        return new ToStringBuilder().buildFrom(anObject, true, true, 0);
+        return DEFAULT.buildFrom(anObject, true, true, 0);
     }
 
     /**
@@ -61,10 +112,119 @@ public class ToStringBuilder {
      *                be accessed
      * @param hideNullValues :
      *                tells the builder to hide fields for which the value is null.
-     * @param recursionDepth TODO
+     * @param recursionDepth :
+     *                number of reference levels for which field values are presented too.
      */
     public static String build(Object anObject, boolean hideErrors, boolean hideNullValues, int recursionDepth) {
-        return new ToStringBuilder().buildFrom(anObject, hideErrors, hideNullValues, recursionDepth);
+        return DEFAULT.buildFrom(anObject, hideErrors, hideNullValues, recursionDepth);
+    }
+
+    /**
+     * Append to a buffer a String representing the full state of an Object by inspecting
+     * all its fields. Errors and null values are hidden.
+     * @param anObject : Object
+     * @param buffer : StringBuffer
+     * @return StringBuffer the argument
+     */
+    public static StringBuffer build(Object anObject, StringBuffer buffer) {
+        return DEFAULT.buildOn(anObject, buffer, true, true, 0);
+    }
+
+    /**
+     * Answer an object whose toString() answers build(anObject).
+     * Use it to pass an Object to a logger without paying for the build if the message is not logged.
+     * @param anObject : Object
+     * @return Object
+     */
+    public static Object lazy(Object anObject) {
+        return DEFAULT.lazyFrom(anObject, true, true, 0);
+    }
+
+    /**
+     * Answer an object whose toString() answers buildFrom(anObject,...) using the receiver.
+     * @param anObject : Object
+     * @param hideErrors : boolean
+     * @param hideNullValues : boolean
+     * @param recursionDepth : int
+     * @return Object
+     */
+    public Object lazyFrom(Object anObject, boolean hideErrors, boolean hideNullValues, int recursionDepth) {
+        return new Lazy(this, anObject, hideErrors, hideNullValues, recursionDepth);
+    }
+
+    /**
+     * Set the maximum number of characters appended by one build.
+     * Longer results are cut off and end with "...". Configure a builder before sharing it.
+     * @param max : int &gt; 0, Integer.MAX_VALUE (default) for no limit
+     */
+    public void setMaxLength(int max) {
+        if (max < 1)
+            throw new IllegalArgumentException("maximum length must be positive:" + max);
+        this.maxLength = max;
+    }
+
+    /**
+     * Answer the maximum number of characters appended by one build.
+     * @return int
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Set the maximum number of fields presented per object.
+     * If an object has more fields then the list ends with "...". Configure a builder before sharing it.
+     * @param max : int &gt; 0, Integer.MAX_VALUE (default) for no limit
+     */
+    public void setMaxFields(int max) {
+        if (max < 1)
+            throw new IllegalArgumentException("maximum number of fields must be positive:" + max);
+        this.maxFields = max;
+    }
+
+    /**
+     * Answer the maximum number of fields presented per object.
+     * @return int
+     */
+    public int getMaxFields() {
+        return maxFields;
+    }
+
+    /**
+     * Set the number of elements presented for arrays, collections and maps.
+     * Configure a builder before sharing it.
+     * @param size : int &gt;= 0, default is 0 (only element type and size)
+     */
+    public void setPreviewSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("preview size cannot be negative:" + size);
+        this.previewSize = size;
+    }
+
+    /**
+     * Answer the number of elements presented for arrays, collections and maps.
+     * @return int
+     */
+    public int getPreviewSize() {
+        return previewSize;
+    }
+
+    /**
+     * Set whether primitive fields are read using the typed Field accessors (default)
+     * or, like all other fields, using Field.get(..) which answers a wrapper object.
+     * Configure a builder before sharing it.
+     * @param typed : boolean
+     */
+    public void setTypedAccess(boolean typed) {
+        this.typedAccess = typed;
+    }
+
+    /**
+     * Answer whether primitive fields are read using the typed Field accessors.
+     * @return boolean
+     */
+    public boolean isTypedAccess() {
+        return typedAccess;
     }
 
     /**
@@ -75,30 +235,286 @@ public class ToStringBuilder {
      *                be accessed
      * @param hideNullValues :
      *                tells the builder to hide fields for which the value is null.
-     * @param recursionDepth TODO
+     * @param recursionDepth :
+     *                number of reference levels for which field values are presented too.
      */
     public String buildFrom(Object anObject, boolean hideErrors, boolean hideNullValues, int recursionDepth) {
-        StringBuffer buffer = new StringBuffer();
-        buffer.append(shortNameOf(anObject.getClass()));
+        return this.buildOn(anObject, new StringBuffer(), hideErrors, hideNullValues, recursionDepth).toString();
+    }
+
+    /**
+     * Append to a buffer a String representing the full state of an Object by inspecting
+     * all its fields.
+     * @param anObject : Object
+     * @param buffer : StringBuffer
+     * @param hideErrors :
+     *                tells the builder to ignore fields for which the value cannot
+     *                be accessed
+     * @param hideNullValues :
+     *                tells the builder to hide fields for which the value is null.
+     * @param recursionDepth :
+     *                number of reference levels for which field values are presented too.
+     *                Nested objects are presented with errors and null values hidden.
+     * @return StringBuffer the argument
+     */
+    public StringBuffer buildOn(Object anObject, StringBuffer buffer, boolean hideErrors, boolean hideNullValues, int recursionDepth) {
+        IdentityHashMap presenting = recursionDepth > 0 ? new IdentityHashMap() : null;
+        int start = buffer.length();
+        int limit = maxLength > Integer.MAX_VALUE - start ? Integer.MAX_VALUE : start + maxLength;
+        this.appendFieldsOf(anObject, buffer, hideErrors, hideNullValues, recursionDepth, presenting, limit);
+        return buffer;
+    }
+
+    /**
+     * Cut off the buffer at the limit and mark the truncation.
+     * Doing this more than once has the same result.
+     */
+    private static void truncate(StringBuffer buffer, int limit) {
+        buffer.setLength(limit);
+        buffer.append("...");
+    }
+
+    /**
+     * Append the short class name and the fields of an Object.
+     * @param presenting : IdentityHashMap || null the objects whose fields are being appended
+     * @param limit : int buffer length at which the build is cut off
+     */
+    private void appendFieldsOf(Object anObject, StringBuffer buffer, boolean hideErrors, boolean hideNullValues, int depth, IdentityHashMap presenting, int limit) {
+        ClassInfo info = classInfoFor(anObject.getClass());
+        if (presenting != null)
+            presenting.put(anObject, anObject);
+        buffer.append(info.shortName);
         buffer.append('[');
-        List fields = new ArrayList();
-        this.collectDeclaredFieldsInto(anObject.getClass(), fields);
-        for (int f = 0; f < fields.size(); f++) {
-            Field each = (Field) fields.get(f);
-            Object value = getValueOf(each, anObject);
-            if (!(value == null && hideNullValues)) {
-                if (!(hideErrors && accessErrorOccurred)) {
-                    buffer.append(each.getName());
-                    buffer.append('=');
-                    this.appendTo(value, buffer);
-                    if (f != (fields.size() - 1))
-                        buffer.append(',');
+        FieldInfo[] fields = info.fields;
+        boolean first = true;
+        int shown = 0;
+        for (int f = 0; f < fields.length; f++) {
+            if (buffer.length() > limit) {
+                truncate(buffer, limit);
+                return;
+            }
+            if (shown == maxFields) {
+                buffer.append(",...");
+                break;
+            }
+            FieldInfo each = fields[f];
+            if (typedAccess && each.type != 0) {
+                int mark = buffer.length();
+                if (!first)
+                    buffer.append(',');
+                buffer.append(each.name);
+                buffer.append('=');
+                if (each.appendValueTo(anObject, buffer)) {
+                    first = false;
+                    shown++;
+                    continue;
                 }
+                // not readable after all; use the getter
+                buffer.setLength(mark);
             }
+            Object value = getValueOf(each, anObject);
+            if (value == null && hideNullValues)
+                continue;
+            if (value instanceof AccessError && hideErrors)
+                continue;
+            if (!first)
+                buffer.append(',');
+            buffer.append(each.name);
+            buffer.append('=');
+            this.appendTo(value, buffer, depth, presenting, limit);
+            first = false;
+            shown++;
+        }
+        // the closing bracket must fit too
+        if (buffer.length() + 1 > limit) {
+            truncate(buffer, limit);
+            return;
         }
         buffer.append(']');
-        return buffer.toString();
+        if (presenting != null)
+            presenting.remove(anObject);
+    }
+
+    /**
+     * Answer the cached ClassInfo of a class; create it on first use.
+     * Package-private for testing.
+     * @param aClass
+     * @return ClassInfo
+     */
+    static ClassInfo classInfoFor(Class aClass) {
+        synchronized (classInfos) {
+            WeakReference reference = (WeakReference) classInfos.get(aClass);
+            ClassInfo info = reference == null ? null : (ClassInfo) reference.get();
+            if (info != null)
+                return info;
+        }
+        // computed outside the lock; another thread may store an equivalent one
+        ClassInfo info = new ClassInfo(aClass);
+        synchronized (classInfos) {
+            classInfos.put(aClass, new WeakReference(info));
+        }
+        return info;
+    }
+
+    /**
+     * ClassInfo holds what the builder needs to know about a class: its short name and
+     * its non-static fields, those of the superclasses first.
+     */
+    private static final class ClassInfo {
+        final String shortName;
+        final FieldInfo[] fields;
+
+        ClassInfo(Class aClass) {
+            String fullName = aClass.getName();
+            shortName = fullName.substring(fullName.lastIndexOf('.') + 1);
+            List list = new ArrayList();
+            collectDeclaredFieldsInto(aClass, list);
+            fields = new FieldInfo[list.size()];
+            for (int i = 0; i < fields.length; i++)
+                fields[i] = new FieldInfo((Field) list.get(i), aClass);
+        }
     }
+
+    /**
+     * FieldInfo holds a field, whether its value can be read directly, and otherwise its getter
+     * or the reason why there is none.
+     */
+    private static final class FieldInfo {
+        final Field field;
+        final String name;
+        /**
+         * Whether Field.get(..) is expected to succeed without changing accessibility.
+         */
+        final boolean direct;
+        /**
+         * Type code (as used in JVM signatures) of a primitive field that can be read directly, 0 otherwise.
+         */
+        final char type;
+        final Method getter;
+        /**
+         * Value shown if the getter could not be found.
+         */
+        final AccessError getterError;
+
+        FieldInfo(Field aField, Class ownerClass) {
+            field = aField;
+            name = aField.getName();
+            direct = isAccessible(aField);
+            type = direct ? typeCodeOf(aField.getType()) : 0;
+            Method method = null;
+            AccessError error = null;
+            try {
+                method = findMethod(getterNameFor(aField), ownerClass);
+            } catch (SecurityException e) {
+                error = SECURE;
+            } catch (NoSuchMethodException e) {
+                error = NO_GETTER;
+            }
+            getter = method;
+            getterError = error;
+        }
+
+        /**
+         * Append the value of the primitive field without boxing it.
+         * Answer false if the field could not be read.
+         * @param anObject : Object
+         * @param buffer : StringBuffer
+         * @return boolean
+         */
+        boolean appendValueTo(Object anObject, StringBuffer buffer) {
+            try {
+                switch (type) {
+                case 'I' : buffer.append(field.getInt(anObject)); break;
+                case 'J' : buffer.append(field.getLong(anObject)); break;
+                case 'Z' : buffer.append(field.getBoolean(anObject)); break;
+                case 'D' : buffer.append(field.getDouble(anObject)); break;
+                case 'F' : buffer.append(field.getFloat(anObject)); break;
+                case 'C' : buffer.append(field.getChar(anObject)); break;
+                case 'B' : buffer.append((int) field.getByte(anObject)); break;
+                case 'S' : buffer.append((int) field.getShort(anObject)); break;
+                default : return false;
+                }
+            } catch (IllegalAccessException e) {
+                return false;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Lazy defers building the String until it is asked for.
+     */
+    private static final class Lazy {
+        private final ToStringBuilder builder;
+        private final Object object;
+        private final boolean hideErrors;
+        private final boolean hideNullValues;
+        private final int recursionDepth;
+
+        Lazy(ToStringBuilder builder, Object object, boolean hideErrors, boolean hideNullValues, int recursionDepth) {
+            this.builder = builder;
+            this.object = object;
+            this.hideErrors = hideErrors;
+            this.hideNullValues = hideNullValues;
+            this.recursionDepth = recursionDepth;
+        }
+
+        public String toString() {
+            return builder.buildFrom(object, hideErrors, hideNullValues, recursionDepth);
+        }
+    }
+
+    /**
+     * AccessError is the value of a field that could not be accessed.
+     */
+    private static final class AccessError {
+        final String text;
+
+        AccessError(String text) {
+            this.text = text;
+        }
+
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Answer the signature code of a primitive type, 0 for a reference type.
+     */
+    private static char typeCodeOf(Class type) {
+        if (type == int.class) return 'I';
+        if (type == long.class) return 'J';
+        if (type == boolean.class) return 'Z';
+        if (type == double.class) return 'D';
+        if (type == float.class) return 'F';
+        if (type == char.class) return 'C';
+        if (type == byte.class) return 'B';
+        if (type == short.class) return 'S';
+        return 0;
+    }
+
+    /**
+     * Answer whether ToStringBuilder may read the field without setAccessible(true).
+     */
+    private static boolean isAccessible(Field aField) {
+        int modifiers = aField.getModifiers();
+        Class declaring = aField.getDeclaringClass();
+        if (Modifier.isPublic(modifiers) && Modifier.isPublic(declaring.getModifiers()))
+            return true;
+        if (declaring == ToStringBuilder.class)
+            return true;
+        return !Modifier.isPrivate(modifiers) && packageOf(declaring).equals(packageOf(ToStringBuilder.class));
+    }
+
+    private static String packageOf(Class aClass) {
+        String name = aClass.getName();
+        int dot = name.lastIndexOf('.');
+        return dot == -1 ? "" : name.substring(0, dot);
+    }
+
     /**
      * Collect all fields declared by the targetClass and all its superclasses.
      * Excludes static fields.
@@ -107,10 +523,10 @@ public class ToStringBuilder {
      * @param fields
      * 					the container of Field instances
      */
-    private void collectDeclaredFieldsInto(Class targetClass, List fields) {
+    private static void collectDeclaredFieldsInto(Class targetClass, List fields) {
         if (targetClass == null)
             return;
-        this.collectDeclaredFieldsInto(targetClass.getSuperclass(), fields);
+        collectDeclaredFieldsInto(targetClass.getSuperclass(), fields);
         Field[] localFields = targetClass.getDeclaredFields();
         for (int i = 0; i < localFields.length; i++) {
             if (!Modifier.isStatic(localFields[i].getModifiers()))
@@ -125,50 +541,189 @@ public class ToStringBuilder {
      * 
      * @param value
      * @param buffer
+     * @param depth : int number of reference levels for which fields are appended too
+     * @param presenting : IdentityHashMap || null
+     * @param limit : int buffer length at which the build is cut off
      */
-    private void appendTo(Object value, StringBuffer buffer) {
+    private void appendTo(Object value, StringBuffer buffer, int depth, IdentityHashMap presenting, int limit) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
         if (value.getClass() == Boolean.class || value.getClass() == Integer.class || value.getClass() == Byte.class
-                || value.getClass() == Long.class || value.getClass() == Character.class
+                || value.getClass() == Short.class || value.getClass() == Long.class || value.getClass() == Character.class
                 || value.getClass() == Float.class || value.getClass() == Double.class) {
             buffer.append(value);
             return;
         }
         if (value instanceof String) {
+            String string = (String) value;
+            int room = limit - buffer.length();
+            if (string.length() > room)
+                // one more than fits tells the caller to truncate
+                buffer.append(string.substring(0, Math.max(room + 1, 0)));
+            else
+                buffer.append(string);
+            return;
+        }
+        if (value instanceof AccessError) {
             buffer.append(value);
             return;
         }
         if (value.getClass().isArray()) {
-            Object[] valueArray = (Object[]) value;
-            if (valueArray.length == 0)
-                buffer.append("[0]");
-            else {
-                buffer.append(this.shortNameOf(valueArray[0].getClass()));
-                buffer.append("[");
-                buffer.append(valueArray.length);
-                buffer.append("]");
-            }
+            this.appendArrayTo(value, buffer, limit);
             return;
         }
-        if (value instanceof List) {
-            List valueList = (List) value;
-            if (valueList.size() == 0)
-                buffer.append("{0}");
-            else {
-                buffer.append(this.shortNameOf(valueList.get(0).getClass()));
-                buffer.append("{");
-                buffer.append(valueList.size());
-                buffer.append("}");
-            }
+        if (value instanceof Collection) {
+            this.appendCollectionTo((Collection) value, buffer, limit);
             return;
         }
-        if (depth == 0) {
+        if (value instanceof Map) {
+            this.appendMapTo((Map) value, buffer, limit);
+            return;
+        }
+        if (depth == 0 || presenting.containsKey(value)) {
         	buffer.append("a");
         	buffer.append(this.shortNameOf(value.getClass()));
         	buffer.append("@");
         	buffer.append(value.hashCode());
         } else {
-        	buffer.append(ToStringBuilder.build(value,true,true, depth - 1));
-        }        
+        	this.appendFieldsOf(value, buffer, true, true, depth - 1, presenting, limit);
+        }
+    }
+
+    /**
+     * Append the element type and length of an array, and the first elements if previewed.
+     * Arrays of primitives are read without boxing their elements.
+     */
+    private void appendArrayTo(Object array, StringBuffer buffer, int limit) {
+        Class component = array.getClass().getComponentType();
+        if (component.isPrimitive()) {
+            int length = Array.getLength(array);
+            buffer.append(component.getName());
+            buffer.append('[');
+            buffer.append(length);
+            buffer.append(']');
+            int preview = Math.min(length, previewSize);
+            if (preview == 0)
+                return;
+            buffer.append('(');
+            for (int i = 0; i < preview; i++) {
+                if (i > 0)
+                    buffer.append(',');
+                if (array instanceof int[]) buffer.append(((int[]) array)[i]);
+                else if (array instanceof long[]) buffer.append(((long[]) array)[i]);
+                else if (array instanceof byte[]) buffer.append((int) ((byte[]) array)[i]);
+                else if (array instanceof char[]) buffer.append(((char[]) array)[i]);
+                else if (array instanceof boolean[]) buffer.append(((boolean[]) array)[i]);
+                else if (array instanceof double[]) buffer.append(((double[]) array)[i]);
+                else if (array instanceof float[]) buffer.append(((float[]) array)[i]);
+                else buffer.append((int) ((short[]) array)[i]);
+                if (buffer.length() > limit)
+                    return;
+            }
+            this.closePreview(length, preview, buffer);
+            return;
+        }
+        Object[] valueArray = (Object[]) array;
+        if (valueArray.length == 0) {
+            buffer.append("[0]");
+            return;
+        }
+        buffer.append(valueArray[0] == null ? this.shortNameOf(component) : this.shortNameOf(valueArray[0].getClass()));
+        buffer.append('[');
+        buffer.append(valueArray.length);
+        buffer.append(']');
+        int preview = Math.min(valueArray.length, previewSize);
+        if (preview == 0)
+            return;
+        buffer.append('(');
+        for (int i = 0; i < preview; i++) {
+            if (i > 0)
+                buffer.append(',');
+            this.appendTo(valueArray[i], buffer, 0, null, limit);
+            if (buffer.length() > limit)
+                return;
+        }
+        this.closePreview(valueArray.length, preview, buffer);
+    }
+
+    /**
+     * Append the element type (of the first element) and size of a collection, and the first elements if previewed.
+     */
+    private void appendCollectionTo(Collection collection, StringBuffer buffer, int limit) {
+        int size = collection.size();
+        if (size == 0) {
+            buffer.append("{0}");
+            return;
+        }
+        Iterator iterator = collection.iterator();
+        Object first = iterator.next();
+        buffer.append(this.elementNameOf(first));
+        buffer.append('{');
+        buffer.append(size);
+        buffer.append('}');
+        int preview = Math.min(size, previewSize);
+        if (preview == 0)
+            return;
+        buffer.append('(');
+        this.appendTo(first, buffer, 0, null, limit);
+        for (int i = 1; i < preview && buffer.length() <= limit; i++) {
+            buffer.append(',');
+            this.appendTo(iterator.next(), buffer, 0, null, limit);
+        }
+        if (buffer.length() > limit)
+            return;
+        this.closePreview(size, preview, buffer);
+    }
+
+    /**
+     * Append the key and value types (of the first entry) and size of a map, and the first entries if previewed.
+     */
+    private void appendMapTo(Map map, StringBuffer buffer, int limit) {
+        int size = map.size();
+        if (size == 0) {
+            buffer.append("{0}");
+            return;
+        }
+        Iterator iterator = map.entrySet().iterator();
+        Map.Entry first = (Map.Entry) iterator.next();
+        buffer.append(this.elementNameOf(first.getKey()));
+        buffer.append('=');
+        buffer.append(this.elementNameOf(first.getValue()));
+        buffer.append('{');
+        buffer.append(size);
+        buffer.append('}');
+        int preview = Math.min(size, previewSize);
+        if (preview == 0)
+            return;
+        buffer.append('(');
+        Map.Entry entry = first;
+        for (int i = 0; i < preview && buffer.length() <= limit; i++) {
+            if (i > 0) {
+                buffer.append(',');
+                entry = (Map.Entry) iterator.next();
+            }
+            this.appendTo(entry.getKey(), buffer, 0, null, limit);
+            buffer.append('=');
+            this.appendTo(entry.getValue(), buffer, 0, null, limit);
+        }
+        if (buffer.length() > limit)
+            return;
+        this.closePreview(size, preview, buffer);
+    }
+
+    /**
+     * End a list of previewed elements; mark whether there are more.
+     */
+    private void closePreview(int size, int preview, StringBuffer buffer) {
+        if (preview < size)
+            buffer.append(",...");
+        buffer.append(')');
+    }
+
+    private String elementNameOf(Object element) {
+        return element == null ? "Object" : this.shortNameOf(element.getClass());
     }
 
     /**
@@ -183,14 +738,15 @@ public class ToStringBuilder {
 
     /**
      * Try to access the value of a field for an object. First try by inspecting
-     * the field and if that fails try using a getter. Return the result. Tell
-     * the builder whether an error has occurrred.
+     * the field and if that fails try using a getter. Return the result or an
+     * AccessError.
      */
-    private Object getValueOf(Field aField, Object anObject) {
+    private Object getValueOf(FieldInfo aField, Object anObject) {
+        if (!aField.direct)
+            return getValueUsingGetterOf(aField, anObject);
         Object result;
         try {
-            result = aField.get(anObject);
-            accessErrorOccurred = false;
+            result = aField.field.get(anObject);
         } catch (IllegalArgumentException e) {
             result = getValueUsingGetterOf(aField, anObject);
         } catch (IllegalAccessException e) {
@@ -201,34 +757,22 @@ public class ToStringBuilder {
 
     /**
      * Try to access the value of a field using the getter method (if any).
-     * Return the result. Tell the builder whether an error has occurrred.
+     * Return the result or an AccessError.
      */
-    private Object getValueUsingGetterOf(Field aField, Object anObject) {
-        Class itsClass = anObject.getClass();
-        Method getter = null;
+    private Object getValueUsingGetterOf(FieldInfo aField, Object anObject) {
+        Method getter = aField.getter;
         Object result;
+        if (getter == null)
+            return aField.getterError;
         try {
-            getter = this.lookupMethod(getterNameFor(aField), itsClass);
-        } catch (SecurityException e) {
-            accessErrorOccurred = true;
-            return "*secure*";
-        } catch (NoSuchMethodException e) {
-            accessErrorOccurred = true;
-            return "*no getter*";
-        }
-        try {
-            result = getter.invoke(anObject, new Object[0]);
+            result = getter.invoke(anObject, NO_ARGUMENTS);
         } catch (IllegalArgumentException e1) {
-            accessErrorOccurred = true;
-            return "*illegal*";
+            return ILLEGAL;
         } catch (IllegalAccessException e1) {
-            accessErrorOccurred = true;
-            return "*illegal*";
+            return ILLEGAL;
         } catch (InvocationTargetException e1) {
-            accessErrorOccurred = true;
-            return "*error*";
+            return ERROR;
         }
-        accessErrorOccurred = false;
         return result;
     }
     /**
@@ -240,13 +784,16 @@ public class ToStringBuilder {
      * @throws SecurityException
      */
     public Method lookupMethod(String methodName, Class hereClass) throws NoSuchMethodException, SecurityException {
+        return findMethod(methodName, hereClass);
+    }
+    private static Method findMethod(String methodName, Class hereClass) throws NoSuchMethodException, SecurityException {
        if (hereClass == null) throw new NoSuchMethodException(methodName);
        Method method;
        try {
-           method = hereClass.getMethod(methodName, new Class[0]);
+           method = hereClass.getMethod(methodName, NO_PARAMETERS);
         } catch (NoSuchMethodException ex) {
             // retry using super
-            return lookupMethod(methodName,hereClass.getSuperclass());
+            return findMethod(methodName, hereClass.getSuperclass());
         }
         return method;
     }
@@ -255,7 +802,7 @@ public class ToStringBuilder {
      * field. So if the field is named <b>salary </b> then operation returned is
      * <b>getSalary</b>. Boolean typed fields use the <b>is </b> prefix.
      */
-    private String getterNameFor(Field field) {
+    private static String getterNameFor(Field field) {
         String prefix = (field.getType() == boolean.class) ? "is" : "get";
         String fieldName = field.getName();
         return prefix + (fieldName.substring(0, 1).toUpperCase()) + (fieldName.substring(1, fieldName.length()));
@@ -0,0 +1,117 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * Attributes is an ordered list of key-value pairs to write with a tag.
+ * Unlike a Map, attributes are written in the order they were added and
+ * an instance can be cleared and reused for the next tag.
+ * <p>
+ * Example:
+ * 		writer.tagWith("img", writer.attributes().add("src", src).add("alt", alt), true);
+ *
+ * @author E.M.Micklei
+ */
+public class Attributes {
+    /**
+     * Keys and values alternating.
+     */
+    private String[] pairs;
+    private int size = 0;
+
+    public Attributes() {
+        this(4);
+    }
+
+    /**
+     * @param capacity : int expected number of attributes
+     */
+    public Attributes(int capacity) {
+        super();
+        pairs = new String[capacity * 2];
+    }
+
+    /**
+     * Add a key-value pair. A null or empty value is written as key="".
+     * @param key : String will not be encoded
+     * @param value : String || null will be encoded
+     * @return Attributes to allow cascading
+     */
+    public Attributes add(String key, String value) {
+        if (value == null)
+            value = "";
+        if (size * 2 == pairs.length) {
+            String[] larger = new String[pairs.length * 2];
+            System.arraycopy(pairs, 0, larger, 0, pairs.length);
+            pairs = larger;
+        }
+        pairs[size * 2] = key;
+        pairs[size * 2 + 1] = value;
+        size++;
+        return this;
+    }
+
+    /**
+     * Remove all pairs so the receiver can be reused.
+     * @return Attributes to allow cascading
+     */
+    public Attributes clear() {
+        for (int i = size * 2 - 1; i >= 0; i--)
+            pairs[i] = null;
+        size = 0;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index : int 0-based
+     * @return String the key of the pair at index
+     */
+    public String getKey(int index) {
+        return pairs[index * 2];
+    }
+
+    /**
+     * @param index : int 0-based
+     * @return String the value of the pair at index
+     */
+    public String getValue(int index) {
+        return pairs[index * 2 + 1];
+    }
+
+    /**
+     * Write all pairs as  key="value" (each preceded by a space) with encoded values.
+     * @param output : Output
+     * @param escaper : Escaper
+     * @return int the number of characters that were replaced
+     */
+    public int writeOn(Output output, Escaper escaper) {
+        int replaced = 0;
+        for (int i = 0; i < size * 2; i += 2) {
+            output.write(' ');
+            output.write(pairs[i]);
+            output.write('=');
+            output.write('"');
+            replaced += escaper.encodeOn(pairs[i + 1], output);
+            output.write('"');
+        }
+        return replaced;
+    }
+}
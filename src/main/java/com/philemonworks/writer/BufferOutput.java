@@ -0,0 +1,92 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * BufferOutput is an Output that keeps all its characters in memory.
+ * The buffer grows when needed. Its contents can be answered as a String
+ * or written to another Output.
+ *
+ * @author E.M.Micklei
+ */
+public class BufferOutput extends Output {
+
+    public BufferOutput() {
+        this(256);
+    }
+
+    /**
+     * @param size : int initial capacity of the character buffer
+     */
+    public BufferOutput(int size) {
+        super(size);
+    }
+
+    /**
+     * Grow the buffer instead of writing it to a target.
+     */
+    protected void overflow(int needed) {
+        char[] larger = new char[Math.max(buffer.length * 2, count + needed)];
+        System.arraycopy(buffer, 0, larger, 0, count);
+        buffer = larger;
+    }
+
+    /**
+     * Keep the characters; there is no target.
+     */
+    public void flushBuffer() {
+    }
+
+    /**
+     * Answer the number of characters written.
+     * @return int
+     */
+    public int length() {
+        return count;
+    }
+
+    /**
+     * Forget all characters written but keep the buffer for reuse.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Write all characters on another Output.
+     * @param other : Output
+     */
+    public void writeOn(Output other) {
+        other.write(buffer, 0, count);
+    }
+
+    /**
+     * Answer the characters written as a String.
+     */
+    public String toString() {
+        return new String(buffer, 0, count);
+    }
+
+    protected void drain(char[] chars, int offset, int length) {
+    }
+
+    protected void flushTarget() {
+    }
+
+    protected void closeTarget() {
+    }
+}
@@ -0,0 +1,76 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ByteBufferPool keeps a bounded number of byte buffers for reuse by outputs
+ * that encode characters into bytes. Buffers are array-backed so encoders can
+ * write into the array directly.
+ *
+ * @author E.M.Micklei
+ */
+public class ByteBufferPool {
+    /**
+     * Capacity in bytes of each pooled buffer.
+     */
+    public static final int BUFFER_SIZE = 16384;
+    /**
+     * Maximum number of idle buffers kept in the pool.
+     */
+    public static final int MAX_IDLE = 32;
+    private static final List idle = new ArrayList(MAX_IDLE);
+
+    /**
+     * Answer an empty buffer from the pool or a new one if the pool is empty.
+     * @return ByteBuffer
+     */
+    public static ByteBuffer acquire() {
+        synchronized (idle) {
+            if (!idle.isEmpty())
+                return (ByteBuffer) idle.remove(idle.size() - 1);
+        }
+        return ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Answer the number of idle buffers in the pool.
+     * @return int
+     */
+    public static int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers of another capacity or exceeding the pool size are dropped.
+     * @param buffer : ByteBuffer || null
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != BUFFER_SIZE || !buffer.hasArray())
+            return;
+        buffer.clear();
+        synchronized (idle) {
+            if (idle.size() < MAX_IDLE)
+                idle.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * CompressingChannel compresses the bytes written to it in the gzip or the zlib (HTTP "deflate") format
+ * and writes the result to an OutputStream. The Deflater is taken from the DeflaterPool and returned
+ * when the channel is closed; the byte buffer comes from the ByteBufferPool.
+ * <p>
+ * Example:
+ * 		CompressingChannel gzip = CompressingChannel.gzip(response.getOutputStream(), Deflater.BEST_SPEED);
+ * 		HTMLWriter html = new HTMLWriter(gzip);
+ * 		...
+ * 		html.close();
+ * 		log.debug(gzip.getRawCount() + " bytes compressed to " + gzip.getCompressedCount());
+ * <p>
+ * flush() writes all data compressed so far; the Deflater may still hold input that is only
+ * written when the channel is closed.
+ *
+ * @author E.M.Micklei
+ */
+public class CompressingChannel implements WritableByteChannel {
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private final OutputStream stream;
+    private final boolean gzip;
+    private Deflater deflater;
+    private final CRC32 crc;
+    /**
+     * Receives compressed bytes; also used to copy input that is not array-backed.
+     */
+    private ByteBuffer compressed;
+    private ByteBuffer input = null;
+    private long rawCount = 0;
+    private long compressedCount = 0;
+
+    /**
+     * @param stream : OutputStream that receives the compressed bytes
+     * @param gzip : boolean true for the gzip format, false for the zlib format
+     * @param level : int e.g. Deflater.BEST_SPEED
+     * @param strategy : int e.g. Deflater.DEFAULT_STRATEGY
+     */
+    public CompressingChannel(OutputStream stream, boolean gzip, int level, int strategy) {
+        super();
+        this.stream = stream;
+        this.gzip = gzip;
+        this.deflater = DeflaterPool.acquire(level, strategy, gzip);
+        this.crc = gzip ? new CRC32() : null;
+        this.compressed = ByteBufferPool.acquire();
+        if (gzip)
+            this.writeCompressed(GZIP_HEADER, 0, GZIP_HEADER.length);
+    }
+
+    /**
+     * @param stream : OutputStream
+     * @param level : int
+     * @return CompressingChannel that writes the gzip format
+     */
+    public static CompressingChannel gzip(OutputStream stream, int level) {
+        return new CompressingChannel(stream, true, level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * @param stream : OutputStream
+     * @param level : int
+     * @return CompressingChannel that writes the zlib format
+     */
+    public static CompressingChannel deflate(OutputStream stream, int level) {
+        return new CompressingChannel(stream, false, level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    public int write(ByteBuffer source) throws IOException {
+        if (deflater == null)
+            throw new ClosedChannelException();
+        int length = source.remaining();
+        if (source.hasArray()) {
+            this.deflate(source.array(), source.arrayOffset() + source.position(), length);
+            source.position(source.limit());
+            return length;
+        }
+        if (input == null)
+            input = ByteBufferPool.acquire();
+        while (source.hasRemaining()) {
+            int chunk = Math.min(input.capacity(), source.remaining());
+            source.get(input.array(), 0, chunk);
+            this.deflate(input.array(), 0, chunk);
+        }
+        return length;
+    }
+
+    private void deflate(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return;
+        rawCount += length;
+        if (crc != null)
+            crc.update(bytes, offset, length);
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput())
+            this.drainDeflater();
+    }
+
+    private void drainDeflater() throws IOException {
+        byte[] out = compressed.array();
+        int n = deflater.deflate(out, 0, out.length);
+        if (n > 0) {
+            stream.write(out, 0, n);
+            compressedCount += n;
+        }
+    }
+
+    private void writeCompressed(byte[] bytes, int offset, int length) {
+        try {
+            stream.write(bytes, offset, length);
+        } catch (IOException ex) {
+            throw new RuntimeException("writing failed:" + ex.getMessage(), ex);
+        }
+        compressedCount += length;
+    }
+
+    /**
+     * Flush the stream with all data compressed so far.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        stream.flush();
+    }
+
+    public boolean isOpen() {
+        return deflater != null;
+    }
+
+    /**
+     * Write the remaining compressed data (and the gzip trailer), return the Deflater
+     * to the pool and close the stream.
+     */
+    public void close() throws IOException {
+        if (deflater == null)
+            return;
+        try {
+            deflater.finish();
+            while (!deflater.finished())
+                this.drainDeflater();
+            if (gzip) {
+                byte[] trailer = new byte[8];
+                writeIntLE((int) crc.getValue(), trailer, 0);
+                writeIntLE((int) rawCount, trailer, 4);
+                this.writeCompressed(trailer, 0, trailer.length);
+            }
+        } finally {
+            DeflaterPool.release(deflater, gzip);
+            deflater = null;
+            ByteBufferPool.release(compressed);
+            compressed = null;
+            ByteBufferPool.release(input);
+            input = null;
+        }
+        stream.close();
+    }
+
+    private static void writeIntLE(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Answer the number of bytes written to the channel.
+     * @return long
+     */
+    public long getRawCount() {
+        return rawCount;
+    }
+
+    /**
+     * Answer the number of compressed bytes written to the stream, including header and trailer.
+     * @return long
+     */
+    public long getCompressedCount() {
+        return compressedCount;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * DateTimeFormat writes timestamps in the xsd:dateTime (ISO-8601) format yyyy-MM-ddTHH:mm:ssZ
+ * using the UTC time zone. It computes the fields arithmetically instead of using a Calendar
+ * or SimpleDateFormat; it has no state so it can be used by any number of threads.
+ *
+ * @author E.M.Micklei
+ */
+public final class DateTimeFormat {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private DateTimeFormat() {
+        super();
+    }
+
+    /**
+     * Answer the formatted timestamp.
+     * @param millis : long milliseconds since 1970-01-01T00:00:00Z
+     * @return String
+     */
+    public static String format(long millis) {
+        BufferOutput output = new BufferOutput(20);
+        DateTimeFormat.writeOn(millis, output);
+        return output.toString();
+    }
+
+    /**
+     * Write the formatted timestamp on an output.
+     * @param millis : long milliseconds since 1970-01-01T00:00:00Z
+     * @param output : Output
+     */
+    public static void writeOn(long millis, Output output) {
+        long days = millis / MILLIS_PER_DAY;
+        long rest = millis % MILLIS_PER_DAY;
+        if (rest < 0) {
+            days--;
+            rest += MILLIS_PER_DAY;
+        }
+        int seconds = (int) (rest / 1000);
+        // civil date from days since epoch (proleptic Gregorian calendar)
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year >= 0 && year <= 9999) {
+            writeTwoDigits((int) year / 100, output);
+            writeTwoDigits((int) year % 100, output);
+        } else
+            output.write(String.valueOf(year));
+        output.write('-');
+        writeTwoDigits(month, output);
+        output.write('-');
+        writeTwoDigits(day, output);
+        output.write('T');
+        writeTwoDigits(seconds / 3600, output);
+        output.write(':');
+        writeTwoDigits(seconds / 60 % 60, output);
+        output.write(':');
+        writeTwoDigits(seconds % 60, output);
+        output.write('Z');
+    }
+
+    private static void writeTwoDigits(int value, Output output) {
+        output.write((char) ('0' + value / 10));
+        output.write((char) ('0' + value % 10));
+    }
+}
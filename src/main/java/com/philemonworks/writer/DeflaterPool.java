@@ -0,0 +1,81 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * DeflaterPool keeps a bounded number of Deflaters for reuse by compressing outputs.
+ * Creating a Deflater allocates native memory that is only freed by end() or finalization;
+ * reusing them keeps the cost of compression per document flat.
+ *
+ * @author E.M.Micklei
+ */
+public class DeflaterPool {
+    /**
+     * Maximum number of idle deflaters kept in the pool, for each of the two formats.
+     */
+    public static final int MAX_IDLE = 16;
+    /**
+     * Idle deflaters that write zlib headers and those that do not (nowrap).
+     */
+    private static final List wrapping = new ArrayList(MAX_IDLE);
+    private static final List nowrapping = new ArrayList(MAX_IDLE);
+
+    /**
+     * Answer a reset Deflater from the pool or a new one if the pool is empty.
+     * @param level : int e.g. Deflater.BEST_SPEED
+     * @param strategy : int e.g. Deflater.DEFAULT_STRATEGY
+     * @param nowrap : boolean whether the zlib header and checksum are omitted (as in gzip)
+     * @return Deflater
+     */
+    public static Deflater acquire(int level, int strategy, boolean nowrap) {
+        Deflater deflater = null;
+        List idle = nowrap ? nowrapping : wrapping;
+        synchronized (idle) {
+            if (!idle.isEmpty())
+                deflater = (Deflater) idle.remove(idle.size() - 1);
+        }
+        if (deflater == null)
+            deflater = new Deflater(level, nowrap);
+        else
+            deflater.setLevel(level);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /**
+     * Return a deflater to the pool. A deflater exceeding the pool size is ended.
+     * @param deflater : Deflater || null
+     * @param nowrap : boolean the format it was acquired for
+     */
+    public static void release(Deflater deflater, boolean nowrap) {
+        if (deflater == null)
+            return;
+        deflater.reset();
+        List idle = nowrap ? nowrapping : wrapping;
+        synchronized (idle) {
+            if (idle.size() < MAX_IDLE) {
+                idle.add(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+}
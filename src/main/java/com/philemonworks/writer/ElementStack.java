@@ -0,0 +1,163 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ElementStack contains the open tags of a writer, the most recent one on top.
+ * For each tag it keeps the pre-rendered end tag (&lt;/tag&gt;) so that closing
+ * an element is a single copy to the Output. End tags are reused when the same
+ * tag is pushed again; at most MAX_CACHED_CLOSERS of them are kept, so a long-lived
+ * (e.g. pooled) writer with data-dependent tag names does not keep growing.
+ *
+ * @author E.M.Micklei
+ */
+public class ElementStack {
+    /**
+     * Maximum number of end tags kept for reuse; the cache is emptied when it is full.
+     */
+    public static final int MAX_CACHED_CLOSERS = 256;
+    private String[] names;
+    private char[][] closers;
+    private int size = 0;
+    /**
+     * Pre-rendered end tags by tag name.
+     */
+    private final Map closerCache = new HashMap();
+
+    public ElementStack() {
+        this(16);
+    }
+
+    /**
+     * @param capacity : int expected maximum nesting depth
+     */
+    public ElementStack(int capacity) {
+        super();
+        names = new String[capacity];
+        closers = new char[capacity][];
+    }
+
+    /**
+     * Add a tag on top.
+     * @param tag : String
+     */
+    public void push(String tag) {
+        if (size == names.length) {
+            int capacity = Math.max(4, size * 2);
+            String[] newNames = new String[capacity];
+            char[][] newClosers = new char[capacity][];
+            System.arraycopy(names, 0, newNames, 0, size);
+            System.arraycopy(closers, 0, newClosers, 0, size);
+            names = newNames;
+            closers = newClosers;
+        }
+        // the slot often held the same tag before (e.g. rows and cells)
+        if (names[size] != tag) {
+            char[] closer = (char[]) closerCache.get(tag);
+            if (closer == null) {
+                closer = ("</" + tag + ">").toCharArray();
+                if (closerCache.size() == MAX_CACHED_CLOSERS)
+                    closerCache.clear();
+                closerCache.put(tag, closer);
+            }
+            names[size] = tag;
+            closers[size] = closer;
+        }
+        size++;
+    }
+
+    /**
+     * Remove the tag on top and answer it.
+     * @return String
+     */
+    public String pop() {
+        if (size == 0)
+            throw new RuntimeException("no open tags");
+        return names[--size];
+    }
+
+    /**
+     * Answer the tag on top.
+     * @return String
+     */
+    public String peek() {
+        if (size == 0)
+            throw new RuntimeException("no open tags");
+        return names[size - 1];
+    }
+
+    /**
+     * Answer the end tag (&lt;/tag&gt;) of the tag on top.
+     * @return char[]
+     */
+    public char[] peekCloser() {
+        if (size == 0)
+            throw new RuntimeException("no open tags");
+        return closers[size - 1];
+    }
+
+    /**
+     * Answer the tag at a position; 0 is the outermost.
+     * @param index : int
+     * @return String
+     */
+    public String get(int index) {
+        if (index >= size)
+            throw new ArrayIndexOutOfBoundsException(index);
+        return names[index];
+    }
+
+    /**
+     * Answer whether the tag on top is the argument; compares by identity first.
+     * @param tag : String
+     * @return boolean
+     */
+    public boolean isTop(String tag) {
+        String top = this.peek();
+        return top == tag || top.equals(tag);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all tags.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                buffer.append(", ");
+            buffer.append(names[i]);
+        }
+        buffer.append(']');
+        return buffer.toString();
+    }
+}
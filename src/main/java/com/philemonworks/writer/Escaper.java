@@ -0,0 +1,225 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * Escaper replaces ML delimiter characters by special entities.
+ * A lookup table for the ASCII range tells which characters must be replaced;
+ * runs of characters that need no replacement are copied to the Output in bulk.
+ * <p>
+ * The escaping policy of a writer is selected using XMLWriter.setEscaper(..):
+ * <ul>
+ * <li>ASCII : every non-ASCII character becomes a numeric entity (default)</li>
+ * <li>UTF8 : only markup characters are replaced, the Output must use the UTF-8 encoding</li>
+ * <li>HTML : named HTML entities where available, numeric entities otherwise</li>
+ * </ul>
+ * A surrogate pair is replaced by a single numeric entity for its code point.
+ *
+ * @author E.M.Micklei
+ */
+public class Escaper {
+    /**
+     * Replaces control characters, &amp; &lt; &gt; &quot; and all non-ASCII characters by numeric entities (&amp;#N;).
+     */
+    public static final Escaper ASCII = new Escaper(true, true);
+    /**
+     * Replaces &amp; &lt; &gt; &quot; and control characters other than tab, newline and return.
+     * Non-ASCII characters are written as is.
+     */
+    public static final Escaper UTF8 = new Escaper(false, false);
+    /**
+     * Replaces &amp; &lt; &gt; &quot; and non-ASCII characters by named HTML entities (e.g. &amp;eacute;)
+     * or by numeric entities if no name exists.
+     */
+    public static final Escaper HTML = new HTMLEscaper();
+    /**
+     * Replacement for each ASCII character or null if it can be written as is.
+     */
+    protected final char[][] replacements = new char[128][];
+    /**
+     * Whether characters outside the ASCII range are replaced.
+     */
+    private final boolean escapeNonAscii;
+
+    /**
+     * @param escapeNonAscii : boolean whether characters outside the ASCII range are replaced
+     * @param escapeWhitespace : boolean whether tab, newline and return are replaced
+     */
+    protected Escaper(boolean escapeNonAscii, boolean escapeWhitespace) {
+        super();
+        this.escapeNonAscii = escapeNonAscii;
+        for (int v = 0; v < 32; v++)
+            replacements[v] = numericEntity(v);
+        if (!escapeWhitespace) {
+            replacements['\t'] = null;
+            replacements['\n'] = null;
+            replacements['\r'] = null;
+        }
+        replacements['&'] = numericEntity('&');
+        replacements['<'] = numericEntity('<');
+        replacements['>'] = numericEntity('>');
+        replacements['"'] = numericEntity('"');
+    }
+
+    /**
+     * Answer the index of the first character that must be replaced, -1 if there is none.
+     * @param any : CharSequence
+     * @param from : int where to start searching
+     * @return int
+     */
+    public int indexOfEscape(CharSequence any, int from) {
+        for (int i = from, length = any.length(); i < length; i++) {
+            char c = any.charAt(i);
+            if (c < 128 ? replacements[c] != null : escapeNonAscii)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Convert a String to an encoded version of that String.
+     * Answer the argument itself if no characters needed replacement.
+     * @param any : String || null
+     * @return String
+     */
+    public String encoded(String any) {
+        if (any == null)
+            return null;
+        int first = this.indexOfEscape(any, 0);
+        if (first == -1)
+            return any;
+        BufferOutput output = new BufferOutput(any.length() + 16);
+        output.write(any, 0, first);
+        this.encodeOn(any, first, output);
+        return output.toString();
+    }
+
+    /**
+     * Write the argument encoded on an output
+     * @param any : CharSequence || null
+     * @param output : Output
+     * @return int the number of characters that were replaced
+     */
+    public int encodeOn(CharSequence any, Output output) {
+        if (any == null)
+            return 0;
+        return this.encodeOn(any, 0, output);
+    }
+
+    private int encodeOn(CharSequence any, int from, Output output) {
+        int replaced = 0;
+        int run = from;
+        int length = any.length();
+        for (int i = from; i < length; i++) {
+            char c = any.charAt(i);
+            if (c < 128) {
+                char[] replacement = replacements[c];
+                if (replacement == null)
+                    continue;
+                output.write(any, run, i - run);
+                output.write(replacement, 0, replacement.length);
+            } else {
+                if (!escapeNonAscii)
+                    continue;
+                output.write(any, run, i - run);
+                if (isHighSurrogate(c) && i + 1 < length && isLowSurrogate(any.charAt(i + 1))) {
+                    this.writeNonAscii(toCodePoint(c, any.charAt(i + 1)), output);
+                    i++;
+                } else
+                    this.writeNonAscii(c, output);
+            }
+            replaced++;
+            run = i + 1;
+        }
+        output.write(any, run, length - run);
+        return replaced;
+    }
+
+    /**
+     * Write a range of characters encoded on an output
+     * @param chars : char[]
+     * @param offset : int index of the first character
+     * @param length : int number of characters
+     * @param output : Output
+     * @return int the number of characters that were replaced
+     */
+    public int encodeOn(char[] chars, int offset, int length, Output output) {
+        int replaced = 0;
+        int run = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c < 128) {
+                char[] replacement = replacements[c];
+                if (replacement == null)
+                    continue;
+                output.write(chars, run, i - run);
+                output.write(replacement, 0, replacement.length);
+            } else {
+                if (!escapeNonAscii)
+                    continue;
+                output.write(chars, run, i - run);
+                if (isHighSurrogate(c) && i + 1 < end && isLowSurrogate(chars[i + 1])) {
+                    this.writeNonAscii(toCodePoint(c, chars[i + 1]), output);
+                    i++;
+                } else
+                    this.writeNonAscii(c, output);
+            }
+            replaced++;
+            run = i + 1;
+        }
+        output.write(chars, run, end - run);
+        return replaced;
+    }
+
+    /**
+     * Write the replacement for a character outside the ASCII range.
+     * @param codePoint : int the Unicode code point of the character
+     * @param output : Output
+     */
+    protected void writeNonAscii(int codePoint, Output output) {
+        this.writeNumericEntity(codePoint, output);
+    }
+
+    /**
+     * Write a character in the format &amp;#N;
+     * @param v : int the code of the character
+     * @param output : Output
+     */
+    protected void writeNumericEntity(int v, Output output) {
+        output.write('&');
+        output.write('#');
+        output.writeInt(v);
+        output.write(';');
+    }
+
+    private static boolean isHighSurrogate(char c) {
+        return c >= '\uD800' && c <= '\uDBFF';
+    }
+
+    private static boolean isLowSurrogate(char c) {
+        return c >= '\uDC00' && c <= '\uDFFF';
+    }
+
+    private static int toCodePoint(char high, char low) {
+        return ((high - 0xD800) << 10) + (low - 0xDC00) + 0x10000;
+    }
+
+    private static char[] numericEntity(int v) {
+        return ("&#" + v + ";").toCharArray();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * FlushPolicy tells an XMLWriter when to flush its output so that the first parts of a document
+ * reach the receiver (e.g. a browser) while the rest is still being computed. The policy is
+ * inspected each time an element is completed: by end(), closeemptytag() or a method that writes
+ * a whole element (e.g. tagged() or emptytag()). A flush is done when any of its conditions holds:
+ * <ul>
+ * <li>at least a number of characters has been written since the last flush</li>
+ * <li>the closed tag leaves no more than a number of open tags (e.g. 1 flushes after each child of the root)</li>
+ * <li>at least a number of milliseconds has passed since the last flush</li>
+ * </ul>
+ * Example:
+ * 		writer.setFlushPolicy(FlushPolicy.afterChars(16384).orAtDepth(2));
+ * <p>
+ * A FlushPolicy is immutable and can be shared by writers.
+ *
+ * @author E.M.Micklei
+ */
+public final class FlushPolicy {
+    /**
+     * Never flushes; only flush(), finish() and close() do.
+     */
+    public static final FlushPolicy NONE = new FlushPolicy(0, -1, 0);
+    /**
+     * Flushes when the root element is closed, i.e. at the end of each document.
+     */
+    public static final FlushPolicy DOCUMENT = new FlushPolicy(0, 0, 0);
+    private final int chars;
+    private final int depth;
+    private final long millis;
+
+    /**
+     * @param chars : int number of characters written since the last flush; 0 means unused
+     * @param depth : int number of open tags left by a closed tag; -1 means unused
+     * @param millis : long milliseconds since the last flush; 0 means unused
+     */
+    public FlushPolicy(int chars, int depth, long millis) {
+        super();
+        this.chars = chars;
+        this.depth = depth;
+        this.millis = millis;
+    }
+
+    /**
+     * @param chars : int
+     * @return FlushPolicy that flushes when at least this number of characters has been written since the last flush
+     */
+    public static FlushPolicy afterChars(int chars) {
+        return NONE.orAfterChars(chars);
+    }
+
+    /**
+     * @param depth : int
+     * @return FlushPolicy that flushes when a closed tag leaves no more than this number of open tags
+     */
+    public static FlushPolicy atDepth(int depth) {
+        return NONE.orAtDepth(depth);
+    }
+
+    /**
+     * @param millis : long
+     * @return FlushPolicy that flushes when at least this number of milliseconds has passed since the last flush
+     */
+    public static FlushPolicy afterMillis(long millis) {
+        return NONE.orAfterMillis(millis);
+    }
+
+    public FlushPolicy orAfterChars(int chars) {
+        return new FlushPolicy(chars, depth, millis);
+    }
+
+    public FlushPolicy orAtDepth(int depth) {
+        return new FlushPolicy(chars, depth, millis);
+    }
+
+    public FlushPolicy orAfterMillis(long millis) {
+        return new FlushPolicy(chars, depth, millis);
+    }
+
+    /**
+     * Answer whether the policy needs the current time.
+     * @return boolean
+     */
+    public boolean isTimed() {
+        return millis > 0;
+    }
+
+    /**
+     * Answer whether to flush after a tag was closed.
+     * @param charsSinceFlush : long
+     * @param openTags : int number of tags that are still open
+     * @param millisSinceFlush : long only valid if isTimed()
+     * @return boolean
+     */
+    public boolean shouldFlush(long charsSinceFlush, int openTags, long millisSinceFlush) {
+        return (chars > 0 && charsSinceFlush >= chars) || openTags <= depth || (millis > 0 && millisSinceFlush >= millis);
+    }
+}
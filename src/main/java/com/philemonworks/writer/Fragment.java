@@ -0,0 +1,194 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Fragment is markup recorded once by a FragmentRecorder that can be written any number of times.
+ * It consists of static runs of characters, which are already encoded, and placeholders that are
+ * filled with new values each time the Fragment is written. Static runs are also kept UTF-8 encoded;
+ * these bytes are written as is to a Utf8Output.
+ * <p>
+ * A Fragment may leave tags open (e.g. html and body of a page header) or close tags that were open
+ * (e.g. a page footer); writing it updates the stack of open tags of the writer accordingly.
+ * <p>
+ * A Fragment is immutable and can be shared by threads.
+ *
+ * @author E.M.Micklei
+ */
+public final class Fragment {
+    /**
+     * Static runs that are written as ByteBuffer must have at least this number of characters.
+     */
+    private static final int MIN_ENCODED_RUN = 32;
+    /**
+     * runs[i] precedes placeholder i; the last run follows the last placeholder.
+     */
+    private final char[][] runs;
+    /**
+     * UTF-8 encoding of each run, null for short runs.
+     */
+    private final ByteBuffer[] encodedRuns;
+    private final String[] names;
+    /**
+     * Whether the value of a placeholder is encoded by the Escaper of the writer.
+     */
+    private final boolean[] escaped;
+    /**
+     * Tags closed by the fragment, the innermost first.
+     */
+    private final String[] closedTags;
+    /**
+     * Tags left open by the fragment, the outermost first.
+     */
+    private final String[] openedTags;
+    /**
+     * Number of elements in the markup and their deepest nesting relative to the tags open at replay.
+     */
+    private final int elementCount;
+    private final int depth;
+
+    Fragment(char[][] runs, String[] names, boolean[] escaped, String[] closedTags, String[] openedTags, int elementCount, int depth) {
+        super();
+        this.runs = runs;
+        this.names = names;
+        this.escaped = escaped;
+        this.closedTags = closedTags;
+        this.openedTags = openedTags;
+        this.elementCount = elementCount;
+        this.depth = depth;
+        this.encodedRuns = new ByteBuffer[runs.length];
+        try {
+            for (int i = 0; i < runs.length; i++)
+                if (runs[i].length >= MIN_ENCODED_RUN)
+                    encodedRuns[i] = ByteBuffer.wrap(new String(runs[i]).getBytes("UTF-8")).asReadOnlyBuffer();
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException("encoding failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Answer the number of placeholders.
+     * @return int
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param index : int 0-based
+     * @return String the name of the placeholder at index
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Answer the index of the first placeholder with a name, -1 if there is none.
+     * @param name : String
+     * @return int
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Write the fragment with a value for each placeholder taken from a Map by name.
+     * @param writer : XMLWriter
+     * @param values : Map with String keys
+     */
+    public void writeOn(XMLWriter writer, Map values) {
+        Object[] array = new Object[names.length];
+        for (int i = 0; i < names.length; i++)
+            array[i] = values.get(names[i]);
+        this.writeOn(writer, array);
+    }
+
+    /**
+     * Write the fragment with a value for each placeholder.
+     * A null value writes nothing; numbers, booleans and Dates are written without creating Strings;
+     * other values are written as String.valueOf(value).
+     * @param writer : XMLWriter
+     * @param valuesOrNull : Object[] indexed like the placeholders
+     */
+    public void writeOn(XMLWriter writer, Object[] valuesOrNull) {
+        ElementStack stack = writer.stack;
+        writer.counted(elementCount, stack.size() + depth);
+        for (int i = 0; i < closedTags.length; i++) {
+            if (stack.isEmpty())
+                throw new RuntimeException("closing:" + closedTags[i] + " but no end tags were expected");
+            if (!stack.isTop(closedTags[i]))
+                throw new RuntimeException("closing:" + stack.peek() + " but expected:" + closedTags[i]);
+            stack.pop();
+        }
+        for (int i = 0; i < openedTags.length; i++)
+            stack.push(openedTags[i]);
+        Output output = writer.output;
+        Utf8Output utf8 = output instanceof Utf8Output ? (Utf8Output) output : null;
+        for (int i = 0; i < runs.length; i++) {
+            if (utf8 != null && encodedRuns[i] != null)
+                utf8.write(encodedRuns[i], runs[i].length);
+            else
+                output.write(runs[i], 0, runs[i].length);
+            if (i < names.length && valuesOrNull != null && i < valuesOrNull.length)
+                writer.escaped(this.writeValue(valuesOrNull[i], escaped[i], writer.escaper, output));
+        }
+    }
+
+    /**
+     * Answer the number of characters replaced.
+     */
+    private int writeValue(Object value, boolean escape, Escaper escaper, Output output) {
+        if (value == null)
+            return 0;
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            output.writeLong(((Number) value).longValue());
+        else if (value instanceof Double)
+            output.writeDouble(((Double) value).doubleValue());
+        else if (value instanceof Boolean)
+            output.writeBoolean(((Boolean) value).booleanValue());
+        else if (value instanceof Date)
+            DateTimeFormat.writeOn(((Date) value).getTime(), output);
+        else if (value instanceof CharSequence) {
+            if (escape)
+                return escaper.encodeOn((CharSequence) value, output);
+            output.write((CharSequence) value, 0, ((CharSequence) value).length());
+        } else
+            return this.writeValue(String.valueOf(value), escape, escaper, output);
+        return 0;
+    }
+
+    /**
+     * Answer the markup with each placeholder shown as {name}.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < runs.length; i++) {
+            buffer.append(runs[i]);
+            if (i < names.length)
+                buffer.append('{').append(names[i]).append('}');
+        }
+        return buffer.toString();
+    }
+}
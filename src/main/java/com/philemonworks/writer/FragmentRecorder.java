@@ -0,0 +1,166 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FragmentRecorder records the markup written by its HTMLWriter into a Fragment.
+ * Placeholders mark the positions where values are written when the Fragment is replayed.
+ * <p>
+ * Example:
+ * 		FragmentRecorder recorder = new FragmentRecorder();
+ * 		HTMLWriter html = recorder.writer();
+ * 		html.doctype().html().head().noCacheMetaTags();
+ * 		html.tag("title");
+ * 		recorder.text("title");
+ * 		html.end().end().body();
+ * 		Fragment header = recorder.build();
+ * 		...
+ * 		header.writeOn(pageWriter, new Object[] { "Welcome" });
+ * <p>
+ * The indentation of the recorded markup is that of the nesting level at which it was recorded;
+ * replay a Fragment at that level or record it with pretty set to false.
+ *
+ * @author E.M.Micklei
+ */
+public class FragmentRecorder {
+    private final BufferOutput buffer = new BufferOutput(1024);
+    private final HTMLWriter writer = new HTMLWriter(buffer);
+    /**
+     * Tags that are open when the fragment is replayed, the outermost first.
+     */
+    private final String[] openTags;
+    private final List names = new ArrayList();
+    private final List escaped = new ArrayList();
+    /**
+     * Buffer positions of the placeholders.
+     */
+    private int[] positions = new int[8];
+
+    public FragmentRecorder() {
+        this(new String[0]);
+    }
+
+    /**
+     * Create a recorder for a fragment that is replayed inside open tags; the fragment may close them.
+     * @param openTags : String[] the outermost first
+     */
+    public FragmentRecorder(String[] openTags) {
+        super();
+        this.openTags = openTags;
+        for (int i = 0; i < openTags.length; i++)
+            writer.stack.push(openTags[i]);
+    }
+
+    /**
+     * Answer the writer whose markup is recorded.
+     * @return HTMLWriter
+     */
+    public HTMLWriter writer() {
+        return writer;
+    }
+
+    /**
+     * Add a placeholder for a value that is encoded, written like print(..) does.
+     * @param name : String
+     * @return FragmentRecorder to allow cascading
+     */
+    public FragmentRecorder text(String name) {
+        writer.indent();
+        this.placeholder(name, true);
+        if (writer.pretty)
+            writer.newline();
+        return this;
+    }
+
+    /**
+     * Add a placeholder for a value that is written as is.
+     * @param name : String
+     * @return FragmentRecorder to allow cascading
+     */
+    public FragmentRecorder raw(String name) {
+        return this.placeholder(name, false);
+    }
+
+    /**
+     * Add an attribute with an encoded placeholder as value; send between opentag(..) and closetag().
+     * @param key : String
+     * @param name : String
+     * @return FragmentRecorder to allow cascading
+     */
+    public FragmentRecorder attribute(String key, String name) {
+        buffer.write(' ');
+        buffer.write(key);
+        buffer.write("=\"");
+        this.placeholder(name, true);
+        buffer.write('"');
+        return this;
+    }
+
+    /**
+     * Add a placeholder at the current position.
+     * @param name : String
+     * @param escape : boolean whether the value is encoded
+     * @return FragmentRecorder to allow cascading
+     */
+    public FragmentRecorder placeholder(String name, boolean escape) {
+        int index = names.size();
+        if (index == positions.length) {
+            int[] larger = new int[index * 2];
+            System.arraycopy(positions, 0, larger, 0, index);
+            positions = larger;
+        }
+        positions[index] = buffer.length();
+        names.add(name);
+        escaped.add(escape ? Boolean.TRUE : Boolean.FALSE);
+        return this;
+    }
+
+    /**
+     * Answer a Fragment with the markup and placeholders recorded so far.
+     * @return Fragment
+     */
+    public Fragment build() {
+        int count = names.size();
+        char[] chars = buffer.buffer;
+        char[][] runs = new char[count + 1][];
+        boolean[] escapedArray = new boolean[count];
+        int start = 0;
+        for (int i = 0; i <= count; i++) {
+            int end = i < count ? positions[i] : buffer.length();
+            runs[i] = new char[end - start];
+            System.arraycopy(chars, start, runs[i], 0, end - start);
+            start = end;
+            if (i < count)
+                escapedArray[i] = ((Boolean) escaped.get(i)).booleanValue();
+        }
+        ElementStack stack = writer.stack;
+        int common = 0;
+        while (common < openTags.length && common < stack.size() && openTags[common].equals(stack.get(common)))
+            common++;
+        String[] closed = new String[openTags.length - common];
+        for (int i = 0; i < closed.length; i++)
+            closed[i] = openTags[openTags.length - 1 - i];
+        String[] opened = new String[stack.size() - common];
+        for (int i = 0; i < opened.length; i++)
+            opened[i] = stack.get(common + i);
+        return new Fragment(runs, (String[]) names.toArray(new String[count]), escapedArray, closed, opened,
+                writer.getElementCount(), writer.getMaxDepth() - openTags.length);
+    }
+}
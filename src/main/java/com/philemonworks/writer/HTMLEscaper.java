@@ -0,0 +1,84 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.util.Arrays;
+
+/**
+ * HTMLEscaper replaces markup and non-ASCII characters by named HTML 4 entities.
+ * Characters without a named entity are replaced by a numeric entity.
+ *
+ * @author E.M.Micklei
+ */
+class HTMLEscaper extends Escaper {
+    /**
+     * Entity names for the Latin-1 characters 160 (nbsp) up to 255 (yuml).
+     */
+    private static final String[] LATIN1 = {
+        "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+        "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr",
+        "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+        "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+        "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+        "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+        "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times",
+        "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+        "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+        "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml",
+        "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide",
+        "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+    /**
+     * Code points (sorted) of other frequently used characters that have a named entity.
+     */
+    private static final int[] SPECIAL_CODES = {
+        338, 339, 352, 353, 376, 402, 710, 732,
+        8211, 8212, 8216, 8217, 8218, 8220, 8221, 8222,
+        8224, 8225, 8226, 8230, 8240, 8249, 8250, 8364, 8482 };
+    private static final String[] SPECIAL_NAMES = {
+        "OElig", "oelig", "Scaron", "scaron", "Yuml", "fnof", "circ", "tilde",
+        "ndash", "mdash", "lsquo", "rsquo", "sbquo", "ldquo", "rdquo", "bdquo",
+        "dagger", "Dagger", "bull", "hellip", "permil", "lsaquo", "rsaquo", "euro", "trade" };
+    private final char[][] latin1 = new char[LATIN1.length][];
+    private final char[][] specials = new char[SPECIAL_NAMES.length][];
+
+    HTMLEscaper() {
+        super(true, false);
+        replacements['&'] = "&amp;".toCharArray();
+        replacements['<'] = "&lt;".toCharArray();
+        replacements['>'] = "&gt;".toCharArray();
+        replacements['"'] = "&quot;".toCharArray();
+        for (int i = 0; i < LATIN1.length; i++)
+            latin1[i] = ("&" + LATIN1[i] + ";").toCharArray();
+        for (int i = 0; i < SPECIAL_NAMES.length; i++)
+            specials[i] = ("&" + SPECIAL_NAMES[i] + ";").toCharArray();
+    }
+
+    protected void writeNonAscii(int codePoint, Output output) {
+        char[] entity = null;
+        if (codePoint >= 160 && codePoint <= 255)
+            entity = latin1[codePoint - 160];
+        else {
+            int index = Arrays.binarySearch(SPECIAL_CODES, codePoint);
+            if (index >= 0)
+                entity = specials[index];
+        }
+        if (entity == null)
+            this.writeNumericEntity(codePoint, output);
+        else
+            output.write(entity, 0, entity.length);
+    }
+}
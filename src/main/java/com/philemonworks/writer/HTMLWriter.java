@@ -18,7 +18,8 @@ package com.philemonworks.writer;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 import com.philemonworks.writer.Table.Cell;
 
@@ -30,22 +31,46 @@ import com.philemonworks.writer.Table.Cell;
  * Methods exists for most common HTML tags. If one is missing, the
  * more generic tag-method defined in XMLWriter can be used.
  * <p>
- * Use the method newMap(...,...) to create a map of attribute values for a tag.
+ * Use the method attributes().add(..,..) to create a list of attribute values for a tag
+ * or newMap(...,...) to create a map of attribute values for a tag.
  * Alternatively, the combination opentag({tag}), attribute(..,..) and closetag() 
  * method can be used to write attributes for a tag.
  *  
  * @author E.M.Micklei
  */
 public class HTMLWriter extends XMLWriter {
+	/**
+	 * Flushes each time the root element is closed; see XMLWriter(PrintStream).
+	 * @param out PrintStream
+	 */
     public HTMLWriter(PrintStream out) {
         super(out);
     }  
 	/**
+	 * Flushes each time the root element is closed; see XMLWriter(OutputStream).
 	 * @param out OutputStream
 	 */
 	public HTMLWriter(OutputStream out) {
 		super(out);
 	}	
+	/**
+	 * @param writer Writer
+	 */
+	public HTMLWriter(Writer writer) {
+		super(writer);
+	}
+	/**
+	 * @param channel WritableByteChannel
+	 */
+	public HTMLWriter(WritableByteChannel channel) {
+		super(channel);
+	}
+	/**
+	 * @param output Output
+	 */
+	public HTMLWriter(Output output) {
+		super(output);
+	}
     /**
      * Writes &lt;button name="{name}" value="{value}" type="{type}" onclick="{onclick}" style="{style}"&gt;{label}&lt;/button&gt;
      * @param name is the name of the button
@@ -57,13 +82,14 @@ public class HTMLWriter extends XMLWriter {
      * @return HTMLWriter
      */
     public HTMLWriter button(String name, String value, String type, String label, String onclick, String style) {
-        Map map = new HashMap();
-        map.put("name", name);
-        map.put("value", value);
-        map.put("type", type);
-        map.put("onclick", onclick);
-        map.put("style", style);
-		return this.button(map,label);
+        this.tagWith("button", this.attributes()
+                .add("name", name)
+                .add("value", value)
+                .add("type", type)
+                .add("onclick", onclick)
+                .add("style", style), false);
+        this.print(label);
+        return (HTMLWriter) this.end();
    }
 	/**
 	 * Writes a button using a map of attributes and a label
@@ -92,7 +118,7 @@ public class HTMLWriter extends XMLWriter {
      * @return HTMLWriter
      */
     public HTMLWriter img(String src, String alt) {
-        return (HTMLWriter) this.tag("img", newMap("src", src, "alt", alt), true);
+        return (HTMLWriter) this.tagWith("img", this.attributes().add("src", src).add("alt", alt), true);
     }
 
     /**
@@ -118,7 +144,7 @@ public class HTMLWriter extends XMLWriter {
      * @return HTMLWriter
      */
     public HTMLWriter base(String href){
-        return (HTMLWriter)this.tag("base",this.newMap("href",href),true);
+        return (HTMLWriter)this.tagWith("base",this.attributes().add("href",href),true);
     }
     
     /**
@@ -197,14 +223,26 @@ public class HTMLWriter extends XMLWriter {
      */
     public HTMLWriter table(Table aTable){
 		this.tag("table", aTable.getAttributesMap(), false);
-		for (int r = 1; r <= aTable.getMaxRows(); r++) {
-			Map row = aTable.getRowAt(r);
+		this.tableRows(aTable, 1, aTable.getMaxRows());
+		return (HTMLWriter)this.end(); // table
+    }
+    /**
+     * Writes the rows fromRow..toRow of a prepared table structure (without the table tag).
+     * @param aTable to write
+     * @param fromRow : int one-based index of the first row
+     * @param toRow : int one-based index of the last row
+     */
+    public void tableRows(Table aTable, int fromRow, int toRow) {
+		Table.SpanCursor spans = aTable.spanCursor();
+		int maxC = aTable.getMaxColumns();
+		for (int r = fromRow; r <= toRow; r++) {
 			Map map = aTable.getRowAttributesAt(r);
 			this.tag("tr", map, false);
 			boolean useHeader = r == 1 && aTable.firstRowIsHeader;
-			if (row != null) {
-				for (int c = 1; c <= aTable.getMaxColumns(); c++) {
-					Cell entry = (Cell)row.get(new Integer(c));
+			spans.row(r);
+			if (aTable.hasRow(r) || spans.isSpanned()) {
+				for (int c = spans.skip(1); c <= maxC; c = spans.skip(c + 1)) {
+					Cell entry = aTable.getStoredCellAt(r, c);
 					if (entry == null) {
 						this.tableEmptyCell();
 					} else if (entry == Table.SPANNEDCELL) {
@@ -218,14 +256,106 @@ public class HTMLWriter extends XMLWriter {
 			}
 			this.end(); // row
 		}
-		return (HTMLWriter)this.end(); // table
-    }	
+    }
+    /**
+     * Invoked when a Cell contains a Table. Writes the table inline.
+     * @param aTable to write
+     */
+    protected void nestedTable(Table aTable) {
+        this.table(aTable);
+    }
 	/**
 	 * Invoked by the Table write method.
 	 */
 	protected void tableEmptyCell() {
 		this.indent().raw("<td class=\"empty\">&nbsp;</td>",true);
 	}
+    /**
+     * Writes a table with rows taken one at a time from a cursor.
+     * Only the current row is kept in memory so large tables can be written while the rows are produced.
+     * @param cursor : RowCursor the source of rows
+     * @param attributesOrNull : Map containing key value pairs for the table tag
+     * @param headersOrNull : String[] the contents of the header row (encoded)
+     * @return HTMLWriter
+     */
+    public HTMLWriter table(RowCursor cursor, Map attributesOrNull, String[] headersOrNull) {
+        this.openTable(attributesOrNull, headersOrNull);
+        int columns = cursor.getColumnCount();
+        while (cursor.next()) {
+            this.tag("tr", cursor.getRowAttributes(), false);
+            for (int c = 1; c <= columns; c++)
+                this.tableCell(cursor.getValue(c));
+            this.end(); // row
+        }
+        return this.closeTable();
+    }
+    /**
+     * Writes &lt;table key="value" ... &gt; followed by a header row (if any).
+     * Rows are written using row(...). Must close with closeTable();
+     * @param attributesOrNull : Map containing key value pairs for the table tag
+     * @param headersOrNull : String[] the contents of the header row (encoded)
+     * @return HTMLWriter
+     */
+    public HTMLWriter openTable(Map attributesOrNull, String[] headersOrNull) {
+        this.tag("table", attributesOrNull, false);
+        if (headersOrNull != null) {
+            this.tag("tr");
+            for (int c = 0; c < headersOrNull.length; c++) {
+                if (headersOrNull[c] == null)
+                    this.tableEmptyCell();
+                else
+                    this.th(headersOrNull[c]);
+            }
+            this.end(); // row
+        }
+        return this;
+    }
+    /**
+     * Writes a complete row of a table opened with openTable(..).
+     * @param values : Object[] one per column; null for an empty cell, a Table.Cell for raw contents.
+     * @return HTMLWriter
+     */
+    public HTMLWriter row(Object[] values) {
+        return this.row(null, values);
+    }
+    /**
+     * Writes a complete row of a table opened with openTable(..).
+     * @param attributesOrNull : Map containing key value pairs for the tr tag
+     * @param values : Object[] one per column; null for an empty cell, a Table.Cell for raw contents.
+     * @return HTMLWriter
+     */
+    public HTMLWriter row(Map attributesOrNull, Object[] values) {
+        this.tag("tr", attributesOrNull, false);
+        for (int c = 0; c < values.length; c++)
+            this.tableCell(values[c]);
+        return (HTMLWriter) this.end("tr");
+    }
+    /**
+     * Closes a table opened with openTable(..).
+     * @return HTMLWriter
+     */
+    public HTMLWriter closeTable() {
+        return (HTMLWriter) this.end("table");
+    }
+    /**
+     * Writes a single cell of a streamed table.
+     * @param value : Object || Table.Cell || Table || null
+     */
+    protected void tableCell(Object value) {
+        if (value == null)
+            this.tableEmptyCell();
+        else if (value instanceof Cell) {
+            if (((Cell) value).contents == null)
+                this.tableEmptyCell();
+            else
+                this.td((Cell) value);
+        } else if (value instanceof Table) {
+            this.td();
+            this.nestedTable((Table) value);
+            this.end(); // td
+        } else
+            this.td(String.valueOf(value));
+    }
     /**
      * Writes &lt;tr&gt; Must close with end(); 
      * @return HTMLWriter
@@ -326,9 +456,9 @@ public class HTMLWriter extends XMLWriter {
      * @return HTMLWriter
      */
     private HTMLWriter t(String h_d, Table.Cell aCell){
-		this.tag(h_d, aCell.getAttributesMap(),false); 
+		this.tagWith(h_d, aCell.addAttributesTo(this.attributes()), false);
 		if (aCell.contents instanceof Table)
-			 this.table((Table) aCell.contents);
+			 this.nestedTable((Table) aCell.contents);
 		else
 			this.raw(String.valueOf(aCell.contents));
 		this.end();
@@ -365,7 +495,7 @@ public class HTMLWriter extends XMLWriter {
     }
 
     public HTMLWriter p(String styleClass, String content) {
-        return (HTMLWriter) this.tagged("p", this.newMap("class", styleClass), content, true);
+        return (HTMLWriter) this.taggedWith("p", this.attributes().add("class", styleClass), content, true);
     }
 
     public XMLWriter stylesheet(String href) {
@@ -377,7 +507,7 @@ public class HTMLWriter extends XMLWriter {
     }
 
     public HTMLWriter anchor(String name) {
-        return (HTMLWriter) this.tag("a", this.newMap("name", name), true);
+        return (HTMLWriter) this.tagWith("a", this.attributes().add("name", name), true);
     }
 
     public HTMLWriter href(String url, String title) {
@@ -0,0 +1,350 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.IOException;
+
+/**
+ * Output is the character sink to which an XMLWriter writes its content.
+ * Characters are collected in a reusable buffer and handed over to the
+ * target (a Writer, a PrintStream, a Channel,...) in large chunks.
+ * Subclasses implement how such a chunk is delivered to the target.
+ *
+ * @author E.M.Micklei
+ */
+public abstract class Output {
+    /**
+     * Number of characters buffered before they are written to the target.
+     */
+    public static final int DEFAULT_SIZE = 8192;
+    /**
+     * Contains the characters that are not yet written to the target.
+     */
+    protected char[] buffer;
+    /**
+     * Number of valid characters in the buffer.
+     */
+    protected int count = 0;
+    /**
+     * Number of characters delivered to the target.
+     */
+    protected long drained = 0;
+    /**
+     * Number of times the target was flushed.
+     */
+    private int flushCount = 0;
+    /**
+     * Whether the time spent in the target is measured.
+     */
+    private boolean timed = false;
+    private long blockedMillis = 0;
+
+    /**
+     * @param size : int capacity of the character buffer
+     */
+    protected Output(int size) {
+        super();
+        this.buffer = new char[Math.max(size, 16)];
+    }
+
+    /**
+     * Append a single character.
+     * @param c : char
+     */
+    public void write(char c) {
+        if (count == buffer.length)
+            this.overflow(1);
+        buffer[count++] = c;
+    }
+
+    /**
+     * Append all characters of a String.
+     * @param any : String
+     */
+    public void write(String any) {
+        this.write(any, 0, any.length());
+    }
+
+    /**
+     * Append a range of characters of a String.
+     * @param any : String
+     * @param offset : int index of the first character
+     * @param length : int number of characters
+     */
+    public void write(String any, int offset, int length) {
+        while (length > 0) {
+            if (count == buffer.length)
+                this.overflow(length);
+            int chunk = Math.min(buffer.length - count, length);
+            any.getChars(offset, offset + chunk, buffer, count);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Append a range of characters of a CharSequence.
+     * @param any : CharSequence
+     * @param offset : int index of the first character
+     * @param length : int number of characters
+     */
+    public void write(CharSequence any, int offset, int length) {
+        if (any instanceof String) {
+            this.write((String) any, offset, length);
+            return;
+        }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (count == buffer.length)
+                this.overflow(end - i);
+            buffer[count++] = any.charAt(i);
+        }
+    }
+
+    /**
+     * Append the decimal representation of an int without creating a String.
+     * @param value : int
+     */
+    public void writeInt(int value) {
+        if (value == Integer.MIN_VALUE) {
+            this.write("-2147483648");
+            return;
+        }
+        if (buffer.length - count < 11)
+            this.overflow(11);
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value; rest >= 10; rest /= 10)
+            digits++;
+        count += digits;
+        for (int i = count - 1; i >= count - digits; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Append the decimal representation of a long without creating a String.
+     * @param value : long
+     */
+    public void writeLong(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            this.writeInt((int) value);
+            return;
+        }
+        if (value == Long.MIN_VALUE) {
+            this.write("-9223372036854775808");
+            return;
+        }
+        if (buffer.length - count < 20)
+            this.overflow(20);
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10)
+            digits++;
+        count += digits;
+        for (int i = count - 1; i >= count - digits; i--) {
+            buffer[i] = (char) ('0' + (int) (value % 10));
+            value /= 10;
+        }
+    }
+
+    /**
+     * Append the representation of a double as answered by String.valueOf(double).
+     * Whole numbers below ten million are written without creating a String.
+     * @param value : double
+     */
+    public void writeDouble(double value) {
+        if (value > -1.0E7 && value < 1.0E7 && value == (long) value && !(value == 0.0 && 1.0 / value < 0)) {
+            this.writeLong((long) value);
+            this.write(".0");
+        } else
+            this.write(String.valueOf(value));
+    }
+
+    /**
+     * Append true or false.
+     * @param value : boolean
+     */
+    public void writeBoolean(boolean value) {
+        this.write(value ? "true" : "false");
+    }
+
+    /**
+     * Append a range of characters of an array.
+     * Ranges that do not fit in the buffer are written to the target directly.
+     * @param chars : char[]
+     * @param offset : int index of the first character
+     * @param length : int number of characters
+     */
+    public void write(char[] chars, int offset, int length) {
+        if (length > buffer.length - count) {
+            this.overflow(length);
+            if (length > buffer.length - count) {
+                this.drainTimed(chars, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(chars, offset, buffer, count, length);
+        count += length;
+    }
+
+    /**
+     * Answer the number of characters written, including those still in the buffer.
+     * @return long
+     */
+    public long getCharCount() {
+        return drained + count;
+    }
+
+    /**
+     * Forget the buffered characters and the character count; the buffer is kept for the next target.
+     */
+    protected void clearBuffer() {
+        count = 0;
+        drained = 0;
+        flushCount = 0;
+        blockedMillis = 0;
+    }
+
+    /**
+     * Answer the number of bytes written to the target, -1 if the target does the encoding.
+     * @return long
+     */
+    public long getByteCount() {
+        return -1;
+    }
+
+    /**
+     * Answer the number of times the target was flushed.
+     * @return int
+     */
+    public int getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Set whether to measure the time spent writing to and flushing the target.
+     * The resolution is that of System.currentTimeMillis().
+     * @param measure : boolean
+     */
+    public void setTimed(boolean measure) {
+        this.timed = measure;
+    }
+
+    /**
+     * Answer the milliseconds spent writing to and flushing the target while timed.
+     * @return long
+     */
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    /**
+     * Make room in the buffer because it cannot hold the next characters.
+     * The default implementation writes the buffered characters to the target.
+     * @param needed : int number of characters that are about to be written
+     */
+    protected void overflow(int needed) {
+        this.flushBuffer();
+    }
+
+    /**
+     * Write all buffered characters to the target without flushing the target itself.
+     */
+    public void flushBuffer() {
+        if (count == 0)
+            return;
+        this.drainTimed(buffer, 0, count);
+        count = 0;
+    }
+
+    private void drainTimed(char[] chars, int offset, int length) {
+        long start = timed ? System.currentTimeMillis() : 0;
+        try {
+            this.drain(chars, offset, length);
+        } catch (IOException ex) {
+            throw new RuntimeException("writing failed:" + ex.getMessage(), ex);
+        }
+        drained += length;
+        if (timed)
+            blockedMillis += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Write all buffered characters and flush the target.
+     */
+    public void flush() {
+        this.flushBuffer();
+        long start = timed ? System.currentTimeMillis() : 0;
+        try {
+            this.flushTarget();
+        } catch (IOException ex) {
+            throw new RuntimeException("flushing failed:" + ex.getMessage(), ex);
+        }
+        flushCount++;
+        if (timed)
+            blockedMillis += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Write all buffered characters and close the target.
+     */
+    public void close() {
+        this.flush();
+        try {
+            this.closeTarget();
+        } catch (IOException ex) {
+            throw new RuntimeException("closing failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Return pooled resources (e.g. buffers) without writing or closing the target.
+     * Used when a writer replaces this Output; it must not be used afterwards.
+     * The default does nothing.
+     */
+    public void release() {
+    }
+
+    /**
+     * Deliver a chunk of characters to the target.
+     * @param chars : char[]
+     * @param offset : int
+     * @param length : int
+     * @throws IOException
+     */
+    protected abstract void drain(char[] chars, int offset, int length) throws IOException;
+
+    /**
+     * Flush the target.
+     * @throws IOException
+     */
+    protected abstract void flushTarget() throws IOException;
+
+    /**
+     * Close the target.
+     * @throws IOException
+     */
+    protected abstract void closeTarget() throws IOException;
+}
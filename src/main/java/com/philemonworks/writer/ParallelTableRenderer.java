@@ -0,0 +1,318 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * ParallelTableRenderer writes a Table by rendering blocks of rows on a number of worker threads.
+ * Each block is rendered into its own BufferOutput, indented for its nesting level, and the blocks
+ * are written to the HTMLWriter in document order when all of them are done. Nested tables with
+ * enough rows are split into blocks as well, so independent nested tables are rendered in parallel.
+ * <p>
+ * The thread that asks for a table helps rendering its blocks. A renderer can be shared by
+ * any number of threads; shutdown() stops the worker threads.
+ * <p>
+ * Example:
+ * 		ParallelTableRenderer renderer = new ParallelTableRenderer(4);
+ * 		renderer.table(html, aTable);
+ * <p>
+ * The blocks are rendered by plain HTMLWriters that use the settings (pretty, escaper,
+ * indentation) of the writer passed to table(..). Because these would not use the overridden
+ * methods of a subclass of HTMLWriter, a table is written by the calling thread only if the
+ * writer is not a plain HTMLWriter.
+ *
+ * @author E.M.Micklei
+ */
+public class ParallelTableRenderer {
+    /**
+     * Tasks waiting for a thread; also the lock for all Job counters.
+     */
+    private final LinkedList queue = new LinkedList();
+    private final Thread[] workers;
+    private boolean shutdown = false;
+    private int rowsPerBlock = 64;
+    private int minimumNestedRows = 16;
+
+    /**
+     * Create a renderer and start its worker threads (daemons).
+     * @param threads : int number of worker threads
+     */
+    public ParallelTableRenderer(int threads) {
+        super();
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    ParallelTableRenderer.this.work();
+                }
+            }, "ParallelTableRenderer-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Change the number of rows rendered by one task (default 64).
+     * @param rows : int
+     */
+    public void setRowsPerBlock(int rows) {
+        this.rowsPerBlock = Math.max(1, rows);
+    }
+
+    /**
+     * Change the number of rows a nested table must have to be rendered by tasks of its own (default 16).
+     * Smaller nested tables are rendered by the task that renders the enclosing row.
+     * @param rows : int
+     */
+    public void setMinimumNestedRows(int rows) {
+        this.minimumNestedRows = Math.max(1, rows);
+    }
+
+    /**
+     * Write a complete prepared table structure on a writer.
+     * A table with no more than one block of rows and no large nested tables, or a writer that is
+     * a subclass of HTMLWriter, is written by the calling thread only.
+     * @param writer : HTMLWriter
+     * @param aTable : Table
+     * @return HTMLWriter the writer
+     */
+    public HTMLWriter table(HTMLWriter writer, Table aTable) {
+        if (writer.getClass() != HTMLWriter.class)
+            return writer.table(aTable);
+        if (aTable.getMaxRows() <= rowsPerBlock && !this.hasLargeNestedTable(aTable))
+            return writer.table(aTable);
+        writer.tag("table", aTable.getAttributesMap(), false);
+        Job job = new Job(writer.getDepth());
+        Chunk root = new Chunk();
+        this.submitBlocks(job, root, aTable, writer.getDepth(), writer);
+        this.await(job);
+        root.writeOn(writer.getOutput());
+        writer.counted(job.elementCount, writer.stack.size() + job.depth);
+        writer.escaped(job.escapedCount);
+        return (HTMLWriter) writer.end();
+    }
+
+    /**
+     * Stop the worker threads after they have finished their current task.
+     * Tables that are still being written are completed by their calling threads.
+     */
+    public void shutdown() {
+        synchronized (queue) {
+            shutdown = true;
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Answer whether a cell contains a Table that is rendered by tasks of its own.
+     * Only the nested tables recorded by the Table are inspected; its cells are not visited.
+     */
+    private boolean hasLargeNestedTable(Table aTable) {
+        List nested = aTable.getNestedTables();
+        for (int i = 0; i < nested.size(); i++)
+            if (((Table) nested.get(i)).getMaxRows() >= minimumNestedRows)
+                return true;
+        return false;
+    }
+
+    /**
+     * Add a Chunk to the parent for each block of rows and queue a task to render it.
+     */
+    private void submitBlocks(Job job, Chunk parent, Table aTable, int depth, XMLWriter settings) {
+        for (int from = 1; from <= aTable.getMaxRows(); from += rowsPerBlock) {
+            Chunk block = new Chunk();
+            parent.parts.add(block);
+            Task task = new Task(job, block, aTable, from, Math.min(aTable.getMaxRows(), from + rowsPerBlock - 1), depth, settings);
+            synchronized (queue) {
+                job.pending++;
+                queue.addLast(task);
+                queue.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Help rendering the tasks of a job until all of them are done.
+     */
+    private void await(Job job) {
+        while (true) {
+            Task next = null;
+            synchronized (queue) {
+                for (Iterator it = queue.iterator(); it.hasNext();) {
+                    Task each = (Task) it.next();
+                    if (each.job == job) {
+                        it.remove();
+                        next = each;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    if (job.pending == 0)
+                        break;
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException("rendering interrupted", ex);
+                    }
+                    continue;
+                }
+            }
+            this.run(next);
+        }
+        if (job.failure instanceof RuntimeException)
+            throw (RuntimeException) job.failure;
+        if (job.failure instanceof Error)
+            throw (Error) job.failure;
+        if (job.failure != null)
+            throw new RuntimeException("rendering failed:" + job.failure.getMessage(), job.failure);
+    }
+
+    /**
+     * Body of a worker thread.
+     */
+    private void work() {
+        while (true) {
+            Task next;
+            synchronized (queue) {
+                while (queue.isEmpty() && !shutdown) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (shutdown)
+                    return;
+                next = (Task) queue.removeFirst();
+            }
+            this.run(next);
+        }
+    }
+
+    private void run(Task task) {
+        Throwable failure = null;
+        BlockWriter writer = null;
+        try {
+            writer = new BlockWriter(task);
+            writer.tableRows(task.table, task.fromRow, task.toRow);
+            task.chunk.parts.add(writer.getOutput());
+        } catch (Throwable ex) {
+            failure = ex;
+        }
+        synchronized (queue) {
+            if (writer != null) {
+                task.job.elementCount += writer.getElementCount();
+                task.job.depth = Math.max(task.job.depth, task.depth - task.job.rootDepth + writer.getMaxDepth());
+                task.job.escapedCount += writer.getEscapedCount();
+            }
+            task.job.pending--;
+            if (task.job.failure == null)
+                task.job.failure = failure;
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Job is the set of tasks for one call of table(..).
+     */
+    private static final class Job {
+        int pending = 0;
+        Throwable failure = null;
+        /**
+         * Depth of the rows of the root table; the counts of the blocks are added to the writer.
+         */
+        final int rootDepth;
+        int elementCount = 0;
+        int depth = 0;
+        int escapedCount = 0;
+
+        Job(int rootDepth) {
+            this.rootDepth = rootDepth;
+        }
+    }
+
+    /**
+     * Task renders a block of rows into a Chunk.
+     */
+    private static final class Task {
+        final Job job;
+        final Chunk chunk;
+        final Table table;
+        final int fromRow;
+        final int toRow;
+        final int depth;
+        final XMLWriter settings;
+
+        Task(Job job, Chunk chunk, Table table, int fromRow, int toRow, int depth, XMLWriter settings) {
+            this.job = job;
+            this.chunk = chunk;
+            this.table = table;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.depth = depth;
+            this.settings = settings;
+        }
+    }
+
+    /**
+     * Chunk is an ordered list of BufferOutputs and Chunks that are written in that order.
+     */
+    private static final class Chunk {
+        final List parts = new ArrayList(4);
+
+        void writeOn(Output output) {
+            for (int i = 0; i < parts.size(); i++) {
+                Object each = parts.get(i);
+                if (each instanceof Chunk)
+                    ((Chunk) each).writeOn(output);
+                else
+                    ((BufferOutput) each).writeOn(output);
+            }
+        }
+    }
+
+    /**
+     * BlockWriter renders a block of rows. A large nested table ends the current BufferOutput
+     * and continues in a new one after the blocks of the nested table.
+     */
+    private final class BlockWriter extends HTMLWriter {
+        private final Task task;
+
+        BlockWriter(Task task) {
+            super(new BufferOutput(4096));
+            this.task = task;
+            this.copySettingsFrom(task.settings);
+            this.setIndentLevel(task.depth);
+        }
+
+        protected void nestedTable(Table aTable) {
+            if (aTable.getMaxRows() < minimumNestedRows) {
+                super.nestedTable(aTable);
+                return;
+            }
+            this.tag("table", aTable.getAttributesMap(), false);
+            task.chunk.parts.add(output);
+            submitBlocks(task.job, task.chunk, aTable, this.getDepth(), this);
+            output = new BufferOutput(4096);
+            this.end();
+        }
+    }
+}
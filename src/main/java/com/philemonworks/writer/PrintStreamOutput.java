@@ -0,0 +1,80 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.PrintStream;
+
+/**
+ * PrintStreamOutput is an Output that writes its buffered characters to a PrintStream.
+ * It is used to support the PrintStream and OutputStream constructors of XMLWriter.
+ * Characters are converted to bytes by the PrintStream (using the platform encoding).
+ *
+ * @author E.M.Micklei
+ */
+public class PrintStreamOutput extends Output {
+    private PrintStream stream;
+
+    /**
+     * @param stream : PrintStream
+     */
+    public PrintStreamOutput(PrintStream stream) {
+        this(stream, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param stream : PrintStream
+     * @param size : int capacity of the character buffer
+     */
+    public PrintStreamOutput(PrintStream stream, int size) {
+        super(size);
+        this.stream = stream;
+    }
+
+    /**
+     * Answer the PrintStream to which characters are written.
+     * @return PrintStream
+     */
+    public PrintStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Write to another PrintStream, keeping the buffer. Buffered characters are discarded.
+     * @param streamOrNull : PrintStream
+     */
+    public void reset(PrintStream streamOrNull) {
+        this.clearBuffer();
+        this.stream = streamOrNull;
+    }
+
+    protected void drain(char[] chars, int offset, int length) {
+        if (length == 1)
+            stream.print(chars[offset]);
+        else if (offset == 0 && length == chars.length)
+            stream.print(chars);
+        else
+            stream.print(new String(chars, offset, length));
+    }
+
+    protected void flushTarget() {
+        stream.flush();
+    }
+
+    protected void closeTarget() {
+        stream.close();
+    }
+}
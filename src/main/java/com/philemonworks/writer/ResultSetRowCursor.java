@@ -0,0 +1,89 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * ResultSetRowCursor is a RowCursor on the rows of a JDBC ResultSet.
+ * SQLExceptions are reported as RuntimeExceptions.
+ *
+ * @author E.M.Micklei
+ */
+public class ResultSetRowCursor implements RowCursor {
+    private final ResultSet resultSet;
+    private final int columnCount;
+
+    /**
+     * @param resultSet : ResultSet positioned before the first row
+     */
+    public ResultSetRowCursor(ResultSet resultSet) {
+        super();
+        this.resultSet = resultSet;
+        try {
+            this.columnCount = resultSet.getMetaData().getColumnCount();
+        } catch (SQLException ex) {
+            throw new RuntimeException("unable to get columns:" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Answer the labels of the columns, e.g. to use as table headers.
+     * @return String[]
+     */
+    public String[] getColumnLabels() {
+        try {
+            ResultSetMetaData meta = resultSet.getMetaData();
+            String[] labels = new String[columnCount];
+            for (int c = 0; c < columnCount; c++)
+                labels[c] = meta.getColumnLabel(c + 1);
+            return labels;
+        } catch (SQLException ex) {
+            throw new RuntimeException("unable to get column labels:" + ex.getMessage(), ex);
+        }
+    }
+
+    public boolean next() {
+        try {
+            return resultSet.next();
+        } catch (SQLException ex) {
+            throw new RuntimeException("unable to read next row:" + ex.getMessage(), ex);
+        }
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public Object getValue(int column) {
+        try {
+            return resultSet.getObject(column);
+        } catch (SQLException ex) {
+            throw new RuntimeException("unable to read column " + column + ":" + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Rows of a ResultSet have no attributes.
+     */
+    public Map getRowAttributes() {
+        return null;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.util.Map;
+
+/**
+ * RowCursor is the source of rows for writing a table one row at a time
+ * (see HTMLWriter.table(RowCursor,Map,String[])). Only the current row needs to be in memory.
+ *
+ * @author E.M.Micklei
+ */
+public interface RowCursor {
+    /**
+     * Move to the next row.
+     * @return boolean false if there are no more rows
+     */
+    boolean next();
+
+    /**
+     * Answer the number of columns of each row.
+     * @return int
+     */
+    int getColumnCount();
+
+    /**
+     * Answer the value of a column of the current row.
+     * A Table.Cell is written with its raw contents, other values are encoded.
+     * @param column : int one-based column index
+     * @return Object || null for an empty cell
+     */
+    Object getValue(int column);
+
+    /**
+     * Answer the attributes for the tr tag of the current row.
+     * @return Map || null
+     */
+    Map getRowAttributes();
+}
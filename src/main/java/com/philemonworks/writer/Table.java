@@ -16,54 +16,120 @@
 */
 package com.philemonworks.writer;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Table represents an object for storing two-dimensional structured data. Rows and columns are 1-based so the top-left
  * cell has the coordinates (1,1) Entries of a Table are String of Cell objects
+ * <p>
+ * Each row is stored as an array of Cells indexed by column. A row that gets a column beyond MAX_DENSE_COLUMNS
+ * is stored as a Map instead.
+ * <p>
+ * A cell that spans multiple rows or columns is stored once, at its top-left location. The spanned regions are kept
+ * in an index sorted by top row; the covered locations do not store anything. Regions may not overlap.
  */
 public class Table {
+	/**
+	 * Rows with a higher column index are stored in a Map instead of an array.
+	 */
+	public static final int MAX_DENSE_COLUMNS = 4096;
 	private Map tableAttributesMap = new HashMap();
 	public boolean firstRowIsHeader = true;
-	private HashMap rows = new HashMap();
-	private HashMap rowAttributesMaps = new HashMap();
+	/**
+	 * Element at index r-1 is either null, a Cell[] indexed by c-1 or a Map with Integer column keys.
+	 */
+	private Object[] rows;
+	/**
+	 * Element at index r-1 is the Map of attributes for row r (or null).
+	 */
+	private Map[] rowAttributesMaps;
+	private int expectedColumns;
 	private int maxR = 0;
 	private int maxC = 0;
-	public static final Object SPANNEDCELL = (new Table()).new Cell();
 	/**
-	 * Inner class that represents a Cell in a Table. The contents of a Cell is either a Table or a String containing
-	 * raw HTML contents.
+	 * Spanned regions sorted by top row; region i is (spanTop[i],spanLeft[i]) with spanRows[i] rows and
+	 * spanColumns[i] columns.
+	 */
+	private int[] spanTop = new int[0];
+	private int[] spanLeft = new int[0];
+	private int[] spanRows = new int[0];
+	private int[] spanColumns = new int[0];
+	private int spanCount = 0;
+	/**
+	 * Highest number of rows of any region; bounds the search for regions covering a row.
+	 */
+	private int maxSpanRows = 0;
+	/**
+	 * Tables stored by put(..) as the contents of a cell (or null if none). Entries are not removed
+	 * when their cell is replaced.
+	 */
+	private List nestedTables = null;
+	public static final Object SPANNEDCELL = new Cell();
+	private static final String[] SPAN_STRINGS = new String[32];
+	static {
+		for (int i = 0; i < SPAN_STRINGS.length; i++)
+			SPAN_STRINGS[i] = String.valueOf(i);
+	}
+
+	public Table() {
+		this(16, 8);
+	}
+	/**
+	 * Create a Table with room for the expected number of rows and columns.
+	 * Rows and columns beyond these are still accepted.
+	 * 
+	 * @param expectedRows : int
+	 * @param expectedColumns : int
 	 */
-	public class Cell {		
-		private Map attributesMap = null;
+	public Table(int expectedRows, int expectedColumns) {
+		super();
+		this.rows = new Object[Math.max(1, expectedRows)];
+		this.rowAttributesMaps = new Map[rows.length];
+		this.expectedColumns = Math.max(1, expectedColumns);
+	}
+	/**
+	 * Cell in a Table. The contents of a Cell is either a Table or a String containing raw HTML contents.
+	 * <p>
+	 * A Cell does not refer to its Table. The spans are kept as ints and other attributes in a small array of
+	 * key-value pairs that is only created by setAttribute(..). Attributes that many cells have in common
+	 * should be put in a CellStyle that is shared by these cells.
+	 */
+	public static class Cell {
 		public Object contents = null;
+		private int colspan = 1;
+		private int rowspan = 1;
+		private CellStyle style = null;
+		/**
+		 * Keys and values alternating, null if setAttribute(..) was never sent.
+		 */
+		private String[] pairs = null;
 
 		/**
-		 * Add the colspan attribute. Should be send once if needed.
+		 * Set the colspan attribute. A span of 1 is not written.
 		 * 
 		 * @param span
 		 */
 		public void colspan(int span) {
-			if (span == 1) {
-				if (attributesMap != null)
-					attributesMap.remove("colspan");
-				return;
-			}
-			this.setAttribute("colspan", String.valueOf(span));
+			colspan = span;
 		}
 		/**
-		 * Add the rowspan attribute. Should be send once if needed.
+		 * Set the rowspan attribute. A span of 1 is not written.
 		 * 
 		 * @param span
 		 */
 		public void rowspan(int span) {
-			if (span == 1) {
-				if (attributesMap != null)
-					attributesMap.remove("rowspan");
-				return;
-			}			
-			this.setAttribute("rowspan", String.valueOf(span));
+			rowspan = span;
+		}
+		public int getColspan() {
+			return colspan;
+		}
+		public int getRowspan() {
+			return rowspan;
 		}
 		/**
 		 * Set the contents of the cell
@@ -75,37 +141,312 @@ public class Table {
 			contents = anObject;
 		}
 		/**
-		 * Add or overwrite a key-value pair of String.
+		 * Set the style that provides the attributes shared with other cells. Attributes set on the cell itself
+		 * take precedence.
+		 * 
+		 * @param aStyleOrNull : CellStyle
+		 */
+		public void setStyle(CellStyle aStyleOrNull) {
+			style = aStyleOrNull;
+		}
+		public CellStyle getStyle() {
+			return style;
+		}
+		/**
+		 * Add or overwrite a key-value pair of String. A null value removes the attribute.
 		 * 
 		 * @param key :
 		 *        String
 		 * @param value :
-		 *        String
+		 *        String || null
 		 */
 		public void setAttribute(String key, String value) {
-			this.getAttributesMap().put(key, value);
+			if (("colspan".equals(key) || "rowspan".equals(key)) && this.setSpan(key, value))
+				return;
+			int index = this.indexOf(key);
+			if (index != -1) {
+				if (value != null) {
+					pairs[index + 1] = value;
+					return;
+				}
+				String[] smaller = new String[pairs.length - 2];
+				System.arraycopy(pairs, 0, smaller, 0, index);
+				System.arraycopy(pairs, index + 2, smaller, index, pairs.length - index - 2);
+				pairs = smaller.length == 0 ? null : smaller;
+				return;
+			}
+			if (value == null)
+				return;
+			int size = pairs == null ? 0 : pairs.length;
+			String[] larger = new String[size + 2];
+			if (pairs != null)
+				System.arraycopy(pairs, 0, larger, 0, size);
+			larger[size] = key;
+			larger[size + 1] = value;
+			pairs = larger;
+		}
+		/**
+		 * Answer the value of an attribute set on the cell, its style or its spans.
+		 * 
+		 * @param key : String
+		 * @return String || null
+		 */
+		public String getAttribute(String key) {
+			int index = this.indexOf(key);
+			if (index != -1)
+				return pairs[index + 1];
+			if (colspan != 1 && "colspan".equals(key))
+				return spanString(colspan);
+			if (rowspan != 1 && "rowspan".equals(key))
+				return spanString(rowspan);
+			return style == null ? null : style.getAttribute(key);
 		}
 		/**
-		 * Lazy initialize the map of attributes and answer it.
+		 * Answer an unmodifiable Map with all attributes of the cell, including those of its style and spans.
+		 * The Map is a snapshot; it cannot be used to change the cell.
 		 * 
 		 * @return Map
+		 * @deprecated use getAttribute(..) and setAttribute(..,..)
 		 */
 		public Map getAttributesMap() {
-			if (attributesMap == null)
-				attributesMap = new HashMap();
-			return attributesMap;
+			Attributes all = this.addAttributesTo(new Attributes());
+			Map map = new HashMap();
+			for (int i = 0; i < all.size(); i++)
+				map.put(all.getKey(i), all.getValue(i));
+			return Collections.unmodifiableMap(map);
 		}
+		/**
+		 * Add the attributes of the style (unless overwritten by the cell), those of the cell and the spans.
+		 * 
+		 * @param attributes : Attributes
+		 * @return Attributes the argument
+		 */
+		public Attributes addAttributesTo(Attributes attributes) {
+			if (style != null)
+				for (int i = 0; i < style.size(); i++)
+					if (this.indexOf(style.getKey(i)) == -1)
+						attributes.add(style.getKey(i), style.getValue(i));
+			if (pairs != null)
+				for (int i = 0; i < pairs.length; i += 2)
+					attributes.add(pairs[i], pairs[i + 1]);
+			if (colspan != 1)
+				attributes.add("colspan", spanString(colspan));
+			if (rowspan != 1)
+				attributes.add("rowspan", spanString(rowspan));
+			return attributes;
+		}
+		private int indexOf(String key) {
+			if (pairs != null)
+				for (int i = 0; i < pairs.length; i += 2)
+					if (pairs[i].equals(key))
+						return i;
+			return -1;
+		}
+		/**
+		 * Answer whether the value was a number and stored as span.
+		 */
+		private boolean setSpan(String key, String value) {
+			int span = 1;
+			if (value != null)
+				try {
+					span = Integer.parseInt(value);
+				} catch (NumberFormatException ex) {
+					return false;
+				}
+			if ("colspan".equals(key))
+				colspan = span;
+			else
+				rowspan = span;
+			return true;
+		}
+	}
+
+	/**
+	 * CellStyle is an immutable set of attributes that can be shared by many cells.
+	 * <p>
+	 * Example:
+	 * 		CellStyle number = new CellStyle("class", "number").with("align", "right");
+	 * 		table.put(r, c, amount).setStyle(number);
+	 */
+	public static final class CellStyle {
+		/**
+		 * Keys and values alternating.
+		 */
+		private final String[] pairs;
+
+		/**
+		 * @param key : String
+		 * @param value : String
+		 */
+		public CellStyle(String key, String value) {
+			this(new String[] { key, value });
+		}
+		/**
+		 * @param attributes : Map with String keys and values; the map is copied
+		 */
+		public CellStyle(Map attributes) {
+			this(new String[attributes.size() * 2]);
+			int i = 0;
+			for (Iterator it = attributes.entrySet().iterator(); it.hasNext(); i += 2) {
+				Map.Entry each = (Map.Entry) it.next();
+				pairs[i] = (String) each.getKey();
+				pairs[i + 1] = (String) each.getValue();
+			}
+		}
+		private CellStyle(String[] pairs) {
+			super();
+			this.pairs = pairs;
+		}
+		/**
+		 * Answer a new style with the attributes of the receiver and the key-value pair added or replaced.
+		 * 
+		 * @param key : String
+		 * @param value : String
+		 * @return CellStyle
+		 */
+		public CellStyle with(String key, String value) {
+			for (int i = 0; i < pairs.length; i += 2)
+				if (pairs[i].equals(key)) {
+					String[] copy = (String[]) pairs.clone();
+					copy[i + 1] = value;
+					return new CellStyle(copy);
+				}
+			String[] larger = new String[pairs.length + 2];
+			System.arraycopy(pairs, 0, larger, 0, pairs.length);
+			larger[pairs.length] = key;
+			larger[pairs.length + 1] = value;
+			return new CellStyle(larger);
+		}
+		/**
+		 * @param key : String
+		 * @return String || null
+		 */
+		public String getAttribute(String key) {
+			for (int i = 0; i < pairs.length; i += 2)
+				if (pairs[i].equals(key))
+					return pairs[i + 1];
+			return null;
+		}
+		public int size() {
+			return pairs.length / 2;
+		}
+		/**
+		 * @param index : int 0-based
+		 * @return String the key of the pair at index
+		 */
+		public String getKey(int index) {
+			return pairs[index * 2];
+		}
+		/**
+		 * @param index : int 0-based
+		 * @return String the value of the pair at index
+		 */
+		public String getValue(int index) {
+			return pairs[index * 2 + 1];
+		}
+	}
+
+	/**
+	 * Answer the String for a span, shared for the common small values.
+	 */
+	private static String spanString(int span) {
+		return span >= 0 && span < SPAN_STRINGS.length ? SPAN_STRINGS[span] : String.valueOf(span);
 	}
 
 	/**
-	 * Return the map of row data
+	 * Return the map of row data keyed by Integer columns. The map is an unmodifiable
+	 * snapshot; use put(..) to change the row.
 	 * 
 	 * @param row :
 	 *        one-based row indez
-	 * @return Map
+	 * @return Map || null if the row has no data
+	 * @deprecated use hasRow(int) and getCellAt(int,int), which do not create objects
 	 */
 	public Map getRowAt(int row) {
-		return (HashMap) rows.get(new Integer(row));
+		Object data = row > 0 && row <= rows.length ? rows[row - 1] : null;
+		if (data == null)
+			return null;
+		if (data instanceof Map)
+			return Collections.unmodifiableMap(new HashMap((Map) data));
+		Cell[] cells = (Cell[]) data;
+		Map map = new HashMap();
+		for (int c = 0; c < cells.length; c++)
+			if (cells[c] != null)
+				map.put(new Integer(c + 1), cells[c]);
+		return Collections.unmodifiableMap(map);
+	}
+	/**
+	 * Answer whether a row has been created by put(..) or get(..).
+	 * 
+	 * @param row :
+	 *        one-based row index
+	 * @return boolean
+	 */
+	public boolean hasRow(int row) {
+		return row > 0 && row <= rows.length && rows[row - 1] != null;
+	}
+	/**
+	 * Answer the Cell stored at the location (r,c) or null if there is none.
+	 * Unlike getCellAt(r,c), locations covered by a spanning cell answer null.
+	 * 
+	 * @param r : one-based row index
+	 * @param c : one-based column index
+	 * @return Cell || null
+	 */
+	Cell getStoredCellAt(int r, int c) {
+		if (r < 1 || r > rows.length || c < 1)
+			return null;
+		Object data = rows[r - 1];
+		if (data == null)
+			return null;
+		if (data instanceof Map)
+			return (Cell) ((Map) data).get(new Integer(c));
+		Cell[] cells = (Cell[]) data;
+		return c <= cells.length ? cells[c - 1] : null;
+	}
+	/**
+	 * Answer the Cell at the location (r,c), SPANNEDCELL if the location is covered by a spanning cell
+	 * or null if there is none.
+	 * 
+	 * @param r : one-based row index
+	 * @param c : one-based column index
+	 * @return Cell || null
+	 */
+	public Cell getCellAt(int r, int c) {
+		Cell cell = this.getStoredCellAt(r, c);
+		if (cell == null && spanCount > 0 && this.isSpanned(r, c))
+			return (Cell) SPANNEDCELL;
+		return cell;
+	}
+	/**
+	 * Answer whether the location (r,c) is covered by a spanning cell other than at its top-left location.
+	 * 
+	 * @param r : one-based row index
+	 * @param c : one-based column index
+	 * @return boolean
+	 */
+	public boolean isSpanned(int r, int c) {
+		for (int i = this.firstSpanFrom(r - maxSpanRows + 1); i < spanCount && spanTop[i] <= r; i++) {
+			if (spanTop[i] + spanRows[i] > r && c >= spanLeft[i] && c < spanLeft[i] + spanColumns[i])
+				return r != spanTop[i] || c != spanLeft[i];
+		}
+		return false;
+	}
+	/**
+	 * Answer the number of cells that span multiple rows or columns.
+	 * 
+	 * @return int
+	 */
+	public int getSpanCount() {
+		return spanCount;
+	}
+	/**
+	 * Answer a new cursor to visit the rows of the receiver from top to bottom, skipping spanned locations.
+	 * 
+	 * @return SpanCursor
+	 */
+	public SpanCursor spanCursor() {
+		return new SpanCursor();
 	}
 	/**
 	 * Return the attributes for a row.
@@ -114,11 +455,20 @@ public class Table {
 	 * @return Map
 	 */
 	public Map getRowAttributesAt(int row) {
-		return (Map) this.rowAttributesMaps.get(new Integer(row));
+		return row > 0 && row <= rowAttributesMaps.length ? rowAttributesMaps[row - 1] : null;
 	}
 	public int getMaxRows() {
 		return maxR;
 	}
+	/**
+	 * Answer the Tables stored by put(..) as the contents of a cell, so these can be found without
+	 * visiting all cells. A Table set as contents of a Cell after it was put is not included.
+	 * 
+	 * @return List of Table
+	 */
+	List getNestedTables() {
+		return nestedTables == null ? Collections.EMPTY_LIST : nestedTables;
+	}
 	public int getMaxColumns() {
 		return maxC;
 	}
@@ -130,15 +480,10 @@ public class Table {
 	 * @return Object the entry
 	 */
 	public Object get(int r, int c) {
-		HashMap row = (HashMap) rows.get(new Integer(r));
-		if (row == null) {
-			row = new HashMap();
-			rows.put(new Integer(r), row);
-		}
-		Object entry = row.get(new Integer(c));
+		this.ensureRow(r);
 		maxR = Math.max(maxR, r);
 		maxC = Math.max(maxC, c);
-		return entry;
+		return this.getCellAt(r, c);
 	}
 	/**
 	 * Store an entry (String or Cell or Table) on the location (r,c)
@@ -149,8 +494,11 @@ public class Table {
 	 *        column of the table (1-based)
 	 * @param entry :
 	 *        Object || Table.Cell || Table || SPANNEDCELL
+	 * @throws IllegalArgumentException if the location is covered by a spanning cell
 	 */
 	public Cell put(int r, int c, Object entry) {
+		if (spanCount > 0 && entry != SPANNEDCELL && this.isSpanned(r, c))
+			throw new IllegalArgumentException("(" + r + "," + c + ") is covered by a spanning cell");
 		Cell newCell;
 		if (entry instanceof Cell)
 			newCell = (Cell)entry;
@@ -158,20 +506,71 @@ public class Table {
 			newCell = new Cell();
 			newCell.contents = entry;
 		}
-		HashMap row = (HashMap) rows.get(new Integer(r));
-		if (row == null) {
-			row = new HashMap();
-			rows.put(new Integer(r), row);
+		if (newCell.contents instanceof Table) {
+			if (nestedTables == null)
+				nestedTables = new ArrayList(4);
+			nestedTables.add(newCell.contents);
+		}
+		this.ensureRow(r);
+		Object data = rows[r - 1];
+		if (data instanceof Map)
+			((Map) data).put(new Integer(c), newCell);
+		else {
+			Cell[] cells = (Cell[]) data;
+			if (c > cells.length) {
+				if (c > MAX_DENSE_COLUMNS) {
+					Map sparse = new HashMap();
+					for (int i = 0; i < cells.length; i++)
+						if (cells[i] != null)
+							sparse.put(new Integer(i + 1), cells[i]);
+					sparse.put(new Integer(c), newCell);
+					rows[r - 1] = sparse;
+					cells = null;
+				} else {
+					Cell[] larger = new Cell[Math.min(MAX_DENSE_COLUMNS, Math.max(c, cells.length * 2))];
+					System.arraycopy(cells, 0, larger, 0, cells.length);
+					rows[r - 1] = cells = larger;
+				}
+			}
+			if (cells != null)
+				cells[c - 1] = newCell;
 		}
-		row.put(new Integer(c), newCell);
 		maxR = Math.max(maxR, r);
 		maxC = Math.max(maxC, c);
 		return newCell;
 	}
+	/**
+	 * Make sure the storage for row r exists.
+	 * 
+	 * @param r : one-based row index
+	 */
+	private void ensureRow(int r) {
+		this.ensureCapacity(r);
+		if (rows[r - 1] == null)
+			rows[r - 1] = new Cell[Math.min(MAX_DENSE_COLUMNS, Math.max(expectedColumns, maxC))];
+	}
+	/**
+	 * Make sure the arrays can hold row r.
+	 * 
+	 * @param r : one-based row index
+	 */
+	private void ensureCapacity(int r) {
+		if (r < 1)
+			throw new IllegalArgumentException("row must be 1 or higher:" + r);
+		if (r > rows.length) {
+			int size = Math.max(r, rows.length * 2);
+			Object[] largerRows = new Object[size];
+			System.arraycopy(rows, 0, largerRows, 0, rows.length);
+			rows = largerRows;
+			Map[] largerMaps = new Map[size];
+			System.arraycopy(rowAttributesMaps, 0, largerMaps, 0, rowAttributesMaps.length);
+			rowAttributesMaps = largerMaps;
+		}
+	}
 	/**
 	 * Store an entry (String or Table) on the location (r,c) which takes multiple rows and multiple columns. The
-	 * topleft location of this area will keep the Cell. The other locations within the area will have the SPANNEDCELL
-	 * constant.
+	 * topleft location of this area will keep the Cell. Entries stored at other locations within the area are
+	 * removed; getCellAt(..) answers SPANNEDCELL for these locations.
 	 * 
 	 * @param r =
 	 *        row of the table (1-based)
@@ -184,22 +583,98 @@ public class Table {
 	 * @param entry :
 	 *        String || Table
 	 * @return topLeft : Table.Cell
+	 * @throws IllegalArgumentException if the area overlaps the area of another spanning cell
 	 */
 	public Cell put(int r, int c, int rows, int columns, Object entry) {
+		if (rows < 1 || columns < 1)
+			throw new IllegalArgumentException("span must be 1 or higher:" + rows + "x" + columns);
+		this.ensureRow(r);
+		int replaced = -1;
+		for (int i = this.firstSpanFrom(r - maxSpanRows + 1); i < spanCount && spanTop[i] < r + rows; i++) {
+			if (spanTop[i] + spanRows[i] > r && spanLeft[i] < c + columns && spanLeft[i] + spanColumns[i] > c) {
+				if (spanTop[i] != r || spanLeft[i] != c)
+					throw new IllegalArgumentException("(" + r + "," + c + "," + rows + "," + columns
+							+ ") overlaps the spanning cell at (" + spanTop[i] + "," + spanLeft[i] + ")");
+				replaced = i;
+			}
+		}
+		if (replaced != -1)
+			this.removeSpan(replaced);
+		// remove entries in the region bounded by (r,c,rows,columns)
+		for (int x = r; x < Math.min(r + rows, this.rows.length + 1); x++)
+			for (int y = c; y < c + columns; y++)
+				if (x != r || y != c)
+					this.removeCell(x, y);
+		if (rows > 1 || columns > 1)
+			this.addSpan(r, c, rows, columns);
 		Cell topLeft = new Cell();
 		topLeft.contents = entry;
 		topLeft.colspan(columns);
 		topLeft.rowspan(rows);
-		// mark other cells in the region bounded by (r,c,rows,columns)
-		for (int x = r; x < (r + rows); x++) {
-			for (int y = c; y < (c + columns); y++) {
-				this.put(x, y, SPANNEDCELL);
-			}
-		}
-		// now replace the marked cell by the new
 		this.put(r, c, topLeft);
+		maxR = Math.max(maxR, r + rows - 1);
+		maxC = Math.max(maxC, c + columns - 1);
 		return topLeft;
 	}
+	/**
+	 * Answer the index of the first region with a top row of at least r.
+	 * 
+	 * @param r : one-based row index
+	 * @return int
+	 */
+	private int firstSpanFrom(int r) {
+		int low = 0;
+		int high = spanCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (spanTop[middle] < r)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+	private void addSpan(int r, int c, int rows, int columns) {
+		if (spanCount == spanTop.length) {
+			int size = Math.max(8, spanCount * 2);
+			spanTop = grow(spanTop, size);
+			spanLeft = grow(spanLeft, size);
+			spanRows = grow(spanRows, size);
+			spanColumns = grow(spanColumns, size);
+		}
+		int i = this.firstSpanFrom(r + 1);
+		int tail = spanCount - i;
+		System.arraycopy(spanTop, i, spanTop, i + 1, tail);
+		System.arraycopy(spanLeft, i, spanLeft, i + 1, tail);
+		System.arraycopy(spanRows, i, spanRows, i + 1, tail);
+		System.arraycopy(spanColumns, i, spanColumns, i + 1, tail);
+		spanTop[i] = r;
+		spanLeft[i] = c;
+		spanRows[i] = rows;
+		spanColumns[i] = columns;
+		spanCount++;
+		maxSpanRows = Math.max(maxSpanRows, rows);
+	}
+	private void removeSpan(int i) {
+		int tail = spanCount - i - 1;
+		System.arraycopy(spanTop, i + 1, spanTop, i, tail);
+		System.arraycopy(spanLeft, i + 1, spanLeft, i, tail);
+		System.arraycopy(spanRows, i + 1, spanRows, i, tail);
+		System.arraycopy(spanColumns, i + 1, spanColumns, i, tail);
+		spanCount--;
+	}
+	private static int[] grow(int[] values, int size) {
+		int[] larger = new int[size];
+		System.arraycopy(values, 0, larger, 0, values.length);
+		return larger;
+	}
+	private void removeCell(int r, int c) {
+		Object data = rows[r - 1];
+		if (data instanceof Map)
+			((Map) data).remove(new Integer(c));
+		else if (data != null && c <= ((Cell[]) data).length)
+			((Cell[]) data)[c - 1] = null;
+	}
 	/**
 	 * Store an integer entry on the location (r,c)
 	 * 
@@ -215,7 +690,8 @@ public class Table {
 		return this.put(r, c, String.valueOf(entry));
 	}
 	public void setRowAttributesMap(int row, Map attributes) {
-		rowAttributesMaps.put(new Integer(row), attributes);
+		this.ensureCapacity(row);
+		rowAttributesMaps[row - 1] = attributes;
 	}
 	/**
 	 * Add or overwrite a key-value pair of String for the table attributes.
@@ -244,4 +720,105 @@ public class Table {
 	public Map getAttributesMap(){
 		return tableAttributesMap;
 	}
+
+	/**
+	 * SpanCursor visits the rows of a Table from top to bottom and answers which columns of the current row are
+	 * not covered by a spanning cell. Only the regions that cover the current row are inspected.
+	 * <p>
+	 * Example:
+	 * 		SpanCursor spans = table.spanCursor();
+	 * 		for (int r = 1; r <= table.getMaxRows(); r++) {
+	 * 			spans.row(r);
+	 * 			for (int c = spans.skip(1); c <= table.getMaxColumns(); c = spans.skip(c + 1))
+	 * 				...
+	 * 		}
+	 */
+	public final class SpanCursor {
+		/**
+		 * Index of the first region that has not been activated.
+		 */
+		private int next = 0;
+		/**
+		 * Indices of the regions that cover the current row.
+		 */
+		private int[] active = new int[4];
+		private int activeCount = 0;
+		/**
+		 * Covered columns of the current row as sorted intervals [from,to].
+		 */
+		private int[] from = new int[4];
+		private int[] to = new int[4];
+		private int intervalCount = 0;
+		private int position = 0;
+
+		private SpanCursor() {
+			super();
+		}
+		/**
+		 * Move to a row. Rows must be visited in ascending order.
+		 * 
+		 * @param r : one-based row index
+		 */
+		public void row(int r) {
+			int kept = 0;
+			for (int i = 0; i < activeCount; i++)
+				if (spanTop[active[i]] + spanRows[active[i]] > r)
+					active[kept++] = active[i];
+			activeCount = kept;
+			for (; next < spanCount && spanTop[next] <= r; next++) {
+				if (spanTop[next] + spanRows[next] > r) {
+					if (activeCount == active.length)
+						active = grow(active, activeCount * 2);
+					active[activeCount++] = next;
+				}
+			}
+			intervalCount = 0;
+			position = 0;
+			for (int i = 0; i < activeCount; i++) {
+				int k = active[i];
+				int first = spanTop[k] == r ? spanLeft[k] + 1 : spanLeft[k];
+				int last = spanLeft[k] + spanColumns[k] - 1;
+				if (first <= last)
+					this.addInterval(first, last);
+			}
+		}
+		private void addInterval(int first, int last) {
+			if (intervalCount == from.length) {
+				from = grow(from, intervalCount * 2);
+				to = grow(to, intervalCount * 2);
+			}
+			int i = intervalCount++;
+			for (; i > 0 && from[i - 1] > first; i--) {
+				from[i] = from[i - 1];
+				to[i] = to[i - 1];
+			}
+			from[i] = first;
+			to[i] = last;
+		}
+		/**
+		 * Answer whether a spanning cell covers the current row.
+		 * 
+		 * @return boolean
+		 */
+		public boolean isSpanned() {
+			return activeCount > 0;
+		}
+		/**
+		 * Answer the first column, at or after c, of the current row that is not covered by a spanning cell.
+		 * Columns must be asked in ascending order.
+		 * 
+		 * @param c : one-based column index
+		 * @return int
+		 */
+		public int skip(int c) {
+			while (position < intervalCount && to[position] < c)
+				position++;
+			// intervals of adjacent regions may follow each other without a gap
+			while (position < intervalCount && from[position] <= c) {
+				c = Math.max(c, to[position] + 1);
+				position++;
+			}
+			return c;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,297 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Utf8Output is an Output that encodes its buffered characters to UTF-8 bytes itself
+ * and writes these to a WritableByteChannel (e.g. a FileChannel or SocketChannel).
+ * The bytes are collected in a ByteBuffer taken from the ByteBufferPool which is
+ * returned to the pool when the output is closed. Closing again has no effect;
+ * writing to a closed output fails until it is reset.
+ * <p>
+ * Pre-encoded bytes can be written using write(ByteBuffer); if the channel supports it,
+ * these are written together with the pending encoded bytes using a single gathering write.
+ *
+ * @author E.M.Micklei
+ */
+public class Utf8Output extends Output {
+    private WritableByteChannel channel;
+    /**
+     * Stream underneath the channel (if any) which must be flushed too.
+     */
+    private OutputStream stream;
+    private ByteBuffer bytes;
+    /**
+     * High surrogate at the end of a drained chunk, waiting for its low surrogate.
+     */
+    private char pendingHighSurrogate = 0;
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    /**
+     * Number of bytes written to the channel.
+     */
+    private long byteCount = 0;
+    /**
+     * Whether closeTarget() has returned the byte buffer to the pool.
+     */
+    private boolean closed = false;
+
+    /**
+     * @param channel : WritableByteChannel
+     */
+    public Utf8Output(WritableByteChannel channel) {
+        this(channel, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param channel : WritableByteChannel
+     * @param size : int capacity of the character buffer
+     */
+    public Utf8Output(WritableByteChannel channel, int size) {
+        super(size);
+        this.channel = channel;
+        this.bytes = ByteBufferPool.acquire();
+    }
+
+    /**
+     * @param stream : OutputStream
+     */
+    public Utf8Output(OutputStream stream) {
+        this(Channels.newChannel(stream));
+        this.stream = stream;
+    }
+
+    /**
+     * Answer the channel to which bytes are written.
+     * @return WritableByteChannel
+     */
+    public WritableByteChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Answer the number of bytes written, including those not yet written to the channel.
+     */
+    public long getByteCount() {
+        return bytes == null ? byteCount : byteCount + bytes.position();
+    }
+
+    /**
+     * Write to another channel, keeping the buffers. Buffered characters and bytes are discarded.
+     * @param channelOrNull : WritableByteChannel
+     */
+    public void reset(WritableByteChannel channelOrNull) {
+        this.clearBuffer();
+        this.byteCount = 0;
+        this.channel = channelOrNull;
+        this.stream = null;
+        this.pendingHighSurrogate = 0;
+        this.closed = false;
+        if (bytes == null)
+            bytes = ByteBufferPool.acquire();
+        else
+            bytes.clear();
+    }
+
+    /**
+     * Write to another stream, keeping the buffers. Buffered characters and bytes are discarded.
+     * @param stream : OutputStream
+     */
+    public void reset(OutputStream stream) {
+        this.reset(Channels.newChannel(stream));
+        this.stream = stream;
+    }
+
+    /**
+     * Write bytes that are already UTF-8 encoded (e.g. cached static markup).
+     * Buffered characters are encoded and written first. The bytes are decoded
+     * only to count the characters; use write(ByteBuffer,int) if that number is known.
+     * @param encoded : ByteBuffer from position to limit; its position is not changed
+     */
+    public void write(ByteBuffer encoded) {
+        int chars = 0;
+        for (int i = encoded.position(); i < encoded.limit(); i++) {
+            int b = encoded.get(i);
+            if ((b & 0xC0) != 0x80)
+                chars++;
+            // a four byte sequence encodes a surrogate pair
+            if ((b & 0xF8) == 0xF0)
+                chars++;
+        }
+        this.write(encoded, chars);
+    }
+
+    /**
+     * Write bytes that are already UTF-8 encoded (e.g. cached static markup).
+     * Buffered characters are encoded and written first.
+     * @param encoded : ByteBuffer from position to limit; its position is not changed
+     * @param charCount : int number of characters the bytes encode, added to getCharCount()
+     */
+    public void write(ByteBuffer encoded, int charCount) {
+        this.flushBuffer();
+        ByteBuffer source = encoded.duplicate();
+        try {
+            this.ensureOpen();
+            drained += charCount;
+            if (source.remaining() <= bytes.remaining()) {
+                bytes.put(source);
+                return;
+            }
+            bytes.flip();
+            byteCount += bytes.remaining() + source.remaining();
+            if (channel instanceof GatheringByteChannel) {
+                gather[0] = bytes;
+                gather[1] = source;
+                while (bytes.hasRemaining() || source.hasRemaining())
+                    ((GatheringByteChannel) channel).write(gather);
+                gather[0] = null;
+                gather[1] = null;
+            } else {
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+                while (source.hasRemaining())
+                    channel.write(source);
+            }
+            bytes.clear();
+        } catch (IOException ex) {
+            throw new RuntimeException("writing failed:" + ex.getMessage(), ex);
+        }
+    }
+
+    protected void drain(char[] chars, int offset, int length) throws IOException {
+        this.ensureOpen();
+        byte[] array = bytes.array();
+        int base = bytes.arrayOffset();
+        int limit = bytes.limit() - 4;
+        int pos = bytes.position();
+        int end = offset + length;
+        int i = offset;
+        if (pos > limit) {
+            this.writeBytes();
+            pos = 0;
+        }
+        if (pendingHighSurrogate != 0 && i < end) {
+            char low = chars[i];
+            if (low >= '\uDC00' && low <= '\uDFFF') {
+                pos = this.putCodePoint(((pendingHighSurrogate - 0xD800) << 10) + (low - 0xDC00) + 0x10000, array, base + pos) - base;
+                i++;
+            } else
+                array[base + pos++] = (byte) '?';
+            pendingHighSurrogate = 0;
+        }
+        while (i < end) {
+            if (pos > limit) {
+                bytes.position(pos);
+                this.writeBytes();
+                pos = 0;
+            }
+            char c = chars[i++];
+            if (c < 0x80) {
+                array[base + pos++] = (byte) c;
+            } else if (c < 0x800) {
+                array[base + pos++] = (byte) (0xC0 | (c >> 6));
+                array[base + pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c >= '\uD800' && c <= '\uDBFF') {
+                if (i == end) {
+                    pendingHighSurrogate = c;
+                } else if (chars[i] >= '\uDC00' && chars[i] <= '\uDFFF') {
+                    pos = this.putCodePoint(((c - 0xD800) << 10) + (chars[i++] - 0xDC00) + 0x10000, array, base + pos) - base;
+                } else
+                    array[base + pos++] = (byte) '?';
+            } else if (c >= '\uDC00' && c <= '\uDFFF') {
+                array[base + pos++] = (byte) '?';
+            } else {
+                array[base + pos++] = (byte) (0xE0 | (c >> 12));
+                array[base + pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                array[base + pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        bytes.position(pos);
+    }
+
+    private int putCodePoint(int codePoint, byte[] array, int index) {
+        array[index++] = (byte) (0xF0 | (codePoint >> 18));
+        array[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        array[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        array[index++] = (byte) (0x80 | (codePoint & 0x3F));
+        return index;
+    }
+
+    /**
+     * Write all encoded bytes to the channel.
+     * @throws IOException
+     */
+    protected void writeBytes() throws IOException {
+        bytes.flip();
+        byteCount += bytes.remaining();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("output is closed");
+    }
+
+    /**
+     * Return the byte buffer to the pool without writing or closing the channel.
+     * The output is closed afterwards; reset(..) reopens it.
+     */
+    public void release() {
+        if (closed)
+            return;
+        closed = true;
+        ByteBufferPool.release(bytes);
+        bytes = null;
+    }
+
+    /**
+     * Close the channel and return the byte buffer to the pool, unless already closed.
+     */
+    public void close() {
+        if (!closed)
+            super.close();
+    }
+
+    protected void flushTarget() throws IOException {
+        this.ensureOpen();
+        this.writeBytes();
+        if (stream != null)
+            stream.flush();
+        else if (channel instanceof CompressingChannel)
+            ((CompressingChannel) channel).flush();
+    }
+
+    protected void closeTarget() throws IOException {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            bytes.put((byte) '?');
+            this.writeBytes();
+        }
+        closed = true;
+        ByteBufferPool.release(bytes);
+        bytes = null;
+        channel.close();
+    }
+}
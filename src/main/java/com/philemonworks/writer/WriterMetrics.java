@@ -0,0 +1,33 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * WriterMetrics receives the counts of each document written by an XMLWriter.
+ * It is set using XMLWriter.setMetrics(..); without metrics, nothing is reported or timed.
+ *
+ * @author E.M.Micklei
+ */
+public interface WriterMetrics {
+    /**
+     * Invoked by finish() and close() of a writer. The counts are available from the writer
+     * (getElementCount(), getMaxDepth(), getEscapedCount()) and its Output (getCharCount(),
+     * getByteCount(), getFlushCount(), getBlockedMillis()).
+     * @param writer : XMLWriter
+     */
+    void documentWritten(XMLWriter writer);
+}
@@ -0,0 +1,74 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * WriterOutput is an Output that writes its buffered characters to a java.io.Writer.
+ *
+ * @author E.M.Micklei
+ */
+public class WriterOutput extends Output {
+    private Writer writer;
+
+    /**
+     * @param writer : Writer
+     */
+    public WriterOutput(Writer writer) {
+        this(writer, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param writer : Writer
+     * @param size : int capacity of the character buffer
+     */
+    public WriterOutput(Writer writer, int size) {
+        super(size);
+        this.writer = writer;
+    }
+
+    /**
+     * Answer the Writer to which characters are written.
+     * @return Writer
+     */
+    public Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Write to another Writer, keeping the buffer. Buffered characters are discarded.
+     * @param writerOrNull : Writer
+     */
+    public void reset(Writer writerOrNull) {
+        this.clearBuffer();
+        this.writer = writerOrNull;
+    }
+
+    protected void drain(char[] chars, int offset, int length) throws IOException {
+        writer.write(chars, offset, length);
+    }
+
+    protected void flushTarget() throws IOException {
+        writer.flush();
+    }
+
+    protected void closeTarget() throws IOException {
+        writer.close();
+    }
+}
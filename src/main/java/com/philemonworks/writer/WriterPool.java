@@ -0,0 +1,150 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WriterPool keeps a bounded number of idle writers of one class for reuse. An acquired writer
+ * is reset to the new target, so its buffers are reused and a document costs almost no allocation.
+ * <p>
+ * Example:
+ * 		private static final WriterPool HTML = new WriterPool(HTMLWriter.class, 32);
+ * 		...
+ * 		HTMLWriter html = (HTMLWriter) HTML.acquire(response.getWriter());
+ * 		try {
+ * 			...
+ * 			html.finish();
+ * 		} finally {
+ * 			HTML.release(html);
+ * 		}
+ * <p>
+ * Settings such as pretty and the escaper are those of the writer as it was released.
+ *
+ * @author E.M.Micklei
+ */
+public class WriterPool {
+    private final Constructor constructor;
+    private final int maxIdle;
+    private final List idle;
+
+    /**
+     * @param writerClass : Class XMLWriter or a subclass with a public constructor that takes an Output
+     * @param maxIdle : int maximum number of idle writers kept
+     */
+    public WriterPool(Class writerClass, int maxIdle) {
+        super();
+        if (!XMLWriter.class.isAssignableFrom(writerClass))
+            throw new IllegalArgumentException("not an XMLWriter:" + writerClass.getName());
+        try {
+            this.constructor = writerClass.getConstructor(new Class[] { Output.class });
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("missing constructor " + writerClass.getName() + "(Output)");
+        }
+        this.maxIdle = maxIdle;
+        this.idle = new ArrayList(maxIdle);
+    }
+
+    /**
+     * Answer a writer that writes on a Writer.
+     * @param target : Writer
+     * @return XMLWriter
+     */
+    public XMLWriter acquire(Writer target) {
+        XMLWriter writer = this.take();
+        if (writer == null)
+            return this.newWriter(new WriterOutput(target));
+        writer.reset(target);
+        return writer;
+    }
+
+    /**
+     * Answer a writer that writes on a stream using the UTF-8 encoding
+     * (unlike the OutputStream constructor of XMLWriter, which uses the platform encoding).
+     * @param target : OutputStream
+     * @return XMLWriter
+     */
+    public XMLWriter acquireUtf8(OutputStream target) {
+        XMLWriter writer = this.take();
+        if (writer == null)
+            return this.newWriter(new Utf8Output(target));
+        writer.resetUtf8(target);
+        return writer;
+    }
+
+    /**
+     * Answer a writer that writes on a channel using the UTF-8 encoding.
+     * @param target : WritableByteChannel
+     * @return XMLWriter
+     */
+    public XMLWriter acquire(WritableByteChannel target) {
+        XMLWriter writer = this.take();
+        if (writer == null)
+            return this.newWriter(new Utf8Output(target));
+        writer.reset(target);
+        return writer;
+    }
+
+    /**
+     * Return a writer to the pool; it must not be used afterwards. The writer is not flushed nor closed
+     * and drops its reference to the target. Writers exceeding the pool size are dropped.
+     * @param writer : XMLWriter || null
+     */
+    public void release(XMLWriter writer) {
+        if (writer == null)
+            return;
+        writer.detach();
+        synchronized (idle) {
+            if (idle.size() < maxIdle)
+                idle.add(writer);
+        }
+    }
+
+    /**
+     * Answer the number of idle writers.
+     * @return int
+     */
+    public int size() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    private XMLWriter take() {
+        synchronized (idle) {
+            if (!idle.isEmpty())
+                return (XMLWriter) idle.remove(idle.size() - 1);
+        }
+        return null;
+    }
+
+    private XMLWriter newWriter(Output output) {
+        try {
+            return (XMLWriter) constructor.newInstance(new Object[] { output });
+        } catch (InvocationTargetException ex) {
+            throw new RuntimeException("creating writer failed:" + ex.getTargetException().getMessage(), ex.getTargetException());
+        } catch (Exception ex) {
+            throw new RuntimeException("creating writer failed:" + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * WriterStatistics adds up the counts of all documents written by the writers that use it.
+ * It can be shared by writers of many threads.
+ * <p>
+ * Example:
+ * 		WriterStatistics statistics = new WriterStatistics();
+ * 		ManagementFactory.getPlatformMBeanServer().registerMBean(statistics,
+ * 			new ObjectName("com.philemonworks.writer:type=WriterStatistics"));
+ * 		...
+ * 		html.setMetrics(statistics);
+ *
+ * @author E.M.Micklei
+ */
+public class WriterStatistics implements WriterMetrics, WriterStatisticsMBean {
+    private long documentCount = 0;
+    private long charCount = 0;
+    private long byteCount = 0;
+    private long elementCount = 0;
+    private long escapedCount = 0;
+    private long flushCount = 0;
+    private long blockedMillis = 0;
+    private int maxDepth = 0;
+    private long maxDocumentChars = 0;
+
+    public synchronized void documentWritten(XMLWriter writer) {
+        Output output = writer.getOutput();
+        long chars = output.getCharCount();
+        documentCount++;
+        charCount += chars;
+        if (output.getByteCount() > 0)
+            byteCount += output.getByteCount();
+        elementCount += writer.getElementCount();
+        escapedCount += writer.getEscapedCount();
+        flushCount += output.getFlushCount();
+        blockedMillis += output.getBlockedMillis();
+        maxDepth = Math.max(maxDepth, writer.getMaxDepth());
+        maxDocumentChars = Math.max(maxDocumentChars, chars);
+    }
+
+    public synchronized long getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Answer the number of characters written by all documents.
+     */
+    public synchronized long getCharCount() {
+        return charCount;
+    }
+
+    /**
+     * Answer the number of bytes written by documents whose Output does the encoding (e.g. Utf8Output).
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    public synchronized long getElementCount() {
+        return elementCount;
+    }
+
+    public synchronized long getEscapedCount() {
+        return escapedCount;
+    }
+
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    public synchronized long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    /**
+     * Answer the deepest nesting of elements in any document.
+     */
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Answer the number of characters of the largest document.
+     */
+    public synchronized long getMaxDocumentChars() {
+        return maxDocumentChars;
+    }
+
+    /**
+     * Set all counts to zero.
+     */
+    public synchronized void reset() {
+        documentCount = 0;
+        charCount = 0;
+        byteCount = 0;
+        elementCount = 0;
+        escapedCount = 0;
+        flushCount = 0;
+        blockedMillis = 0;
+        maxDepth = 0;
+        maxDocumentChars = 0;
+    }
+
+    public synchronized String toString() {
+        return "documents=" + documentCount + " chars=" + charCount + " bytes=" + byteCount + " elements=" + elementCount
+                + " escaped=" + escapedCount + " flushes=" + flushCount + " blockedMillis=" + blockedMillis
+                + " maxDepth=" + maxDepth + " maxDocumentChars=" + maxDocumentChars;
+    }
+}
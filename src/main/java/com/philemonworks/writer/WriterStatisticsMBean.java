@@ -0,0 +1,45 @@
+/*
+    Copyright 2007 Ernest Micklei @ PhilemonWorks.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+*/
+package com.philemonworks.writer;
+
+/**
+ * Management interface of WriterStatistics. It follows the naming convention of a JMX Standard MBean
+ * so WriterStatistics can be registered with an MBeanServer.
+ *
+ * @author E.M.Micklei
+ */
+public interface WriterStatisticsMBean {
+    long getDocumentCount();
+
+    long getCharCount();
+
+    long getByteCount();
+
+    long getElementCount();
+
+    long getEscapedCount();
+
+    long getFlushCount();
+
+    long getBlockedMillis();
+
+    int getMaxDepth();
+
+    long getMaxDocumentChars();
+
+    void reset();
+}
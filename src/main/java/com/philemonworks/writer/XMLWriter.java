@@ -16,15 +16,14 @@
 */
 package com.philemonworks.writer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -39,6 +38,10 @@ public class XMLWriter {
      * 
      */
     public static final String XMLHEADER = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n";
+    private static final char[] SPACES = new char[128];
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
     /**
      * Controls whether the output of nicely indented. Consider setting this value to false for production.
      */
@@ -47,28 +50,218 @@ public class XMLWriter {
      * Indent level of the last tag added.
      */
     protected int indent = 0;
+    /**
+     * Number of spaces written for each nesting level.
+     */
+    private int indentWidth = 2;
+    /**
+     * Number of levels by which all tags are indented in addition to the open tags.
+     */
+    private int indentLevel = 0;
+    /**
+     * Decides when to flush after a tag is closed; null if only explicit flushes are done.
+     */
+    private FlushPolicy flushPolicy = null;
+    /**
+     * Character count of the output and the time at the last flush.
+     */
+    private long flushedChars = 0;
+    private long flushedMillis = 0;
+    /**
+     * Receives the counts of each document written; null if no counts are reported.
+     */
+    private WriterMetrics metrics = null;
+    /**
+     * Counts of the current document.
+     */
+    private int elementCount = 0;
+    private int maxDepth = 0;
+    private int escapedCount = 0;
+    /**
+     * Whether the counts of the current document have been reported to the metrics.
+     */
+    private boolean documentReported = false;
+    /**
+     * Line separator written when pretty.
+     */
+    private char[] newline = { '\n' };
+    /**
+     * Indentation is written as a slice of this array; shared until a deeper nesting requires more.
+     */
+    private char[] spaces = SPACES;
     /**
      * Contains the list of open tags which is used to close them in the right order.
      */
-    protected List stack = new ArrayList();
+    protected ElementStack stack = new ElementStack();
     /**
      * Output stream to which content is written.
+     * Only set when the writer was created using a PrintStream or OutputStream.
+     * Content is buffered by the output; send flush() before writing to this stream directly.
      */
     public PrintStream out;
+    /**
+     * Buffered output to which all content is written.
+     */
+    protected Output output;
+    /**
+     * Policy for replacing characters by entities when encoding content and attribute values.
+     */
+    protected Escaper escaper = Escaper.ASCII;
+    /**
+     * Reusable list of attributes answered by attributes().
+     */
+    private final Attributes attributes = new Attributes(8);
 
     /**
+     * @param output : Output
+     */
+    public XMLWriter(Output output) {
+        super();
+        this.output = output;
+    }
+    /**
+     * Output is buffered and flushed each time the root element is closed (FlushPolicy.DOCUMENT),
+     * so a complete document needs no flush(). Content written after the root element is flushed
+     * by flush(), finish() or close().
      * @param out : PrintStream
      */
     public XMLWriter(PrintStream out) {
-        super();
+        this(new PrintStreamOutput(out));
         this.out = out;
+        this.flushPolicy = FlushPolicy.DOCUMENT;
     }
     /**
+     * Characters are written using the platform encoding. Output is flushed each time the
+     * root element is closed; see XMLWriter(PrintStream).
      * @param out : OutputStream
      */
     public XMLWriter(OutputStream out) {
         this(new PrintStream(out));
     }	
+    /**
+     * @param writer : Writer
+     */
+    public XMLWriter(Writer writer) {
+        this(new WriterOutput(writer));
+    }
+    /**
+     * Characters are written to the channel using the UTF-8 encoding.
+     * @param channel : WritableByteChannel
+     */
+    public XMLWriter(WritableByteChannel channel) {
+        this(new Utf8Output(channel));
+    }
+    /**
+     * Write a new document on a Writer. The tag stack is cleared; buffers and settings
+     * (pretty, escaper, indentation, flush policy) are kept.
+     * @param writer : Writer
+     */
+    public void reset(Writer writer) {
+        if (output instanceof WriterOutput)
+            ((WriterOutput) output).reset(writer);
+        else
+            this.replaceOutput(new WriterOutput(writer));
+        this.resetState(null);
+    }
+    /**
+     * Write a new document on a PrintStream. The tag stack is cleared; buffers and settings are kept.
+     * Unlike XMLWriter(PrintStream), the flush policy is not changed.
+     * @param stream : PrintStream
+     */
+    public void reset(PrintStream stream) {
+        if (output instanceof PrintStreamOutput)
+            ((PrintStreamOutput) output).reset(stream);
+        else
+            this.replaceOutput(new PrintStreamOutput(stream));
+        this.resetState(stream);
+    }
+    /**
+     * Write a new document on a stream using the UTF-8 encoding (unlike the OutputStream constructor,
+     * which uses the platform encoding). The tag stack is cleared; buffers and settings are kept.
+     * @param stream : OutputStream
+     */
+    public void resetUtf8(OutputStream stream) {
+        if (output instanceof Utf8Output)
+            ((Utf8Output) output).reset(stream);
+        else
+            this.replaceOutput(new Utf8Output(stream));
+        this.resetState(null);
+    }
+    /**
+     * Write a new document on a channel using the UTF-8 encoding. The tag stack is cleared; buffers and settings are kept.
+     * @param channel : WritableByteChannel
+     */
+    public void reset(WritableByteChannel channel) {
+        if (output instanceof Utf8Output)
+            ((Utf8Output) output).reset(channel);
+        else
+            this.replaceOutput(new Utf8Output(channel));
+        this.resetState(null);
+    }
+    /**
+     * Write a new document on another Output. The tag stack is cleared; settings are kept.
+     * Pooled resources of the previous Output (e.g. the byte buffer of a Utf8Output) are released.
+     * @param newOutput : Output
+     */
+    public void reset(Output newOutput) {
+        if (newOutput != output)
+            this.replaceOutput(newOutput);
+        this.resetState(null);
+    }
+    /**
+     * Use another Output; the pooled resources of the current one are released.
+     */
+    private void replaceOutput(Output newOutput) {
+        output.release();
+        output = newOutput;
+    }
+    /**
+     * Drop the reference to the target so an idle writer does not keep it alive.
+     */
+    void detach() {
+        if (output instanceof WriterOutput)
+            ((WriterOutput) output).reset((Writer) null);
+        else if (output instanceof Utf8Output)
+            ((Utf8Output) output).reset((WritableByteChannel) null);
+        else if (output instanceof PrintStreamOutput)
+            ((PrintStreamOutput) output).reset((PrintStream) null);
+        this.resetState(null);
+    }
+    private void resetState(PrintStream streamOrNull) {
+        out = streamOrNull;
+        indent = 0;
+        stack.clear();
+        attributes.clear();
+        elementCount = 0;
+        maxDepth = 0;
+        escapedCount = 0;
+        documentReported = false;
+        output.setTimed(metrics != null);
+        flushedChars = 0;
+        flushedMillis = flushPolicy != null && flushPolicy.isTimed() ? System.currentTimeMillis() : 0;
+    }
+    /**
+     * Change the policy for replacing characters by entities.
+     * Use Escaper.UTF8 only if the output encodes characters using UTF-8.
+     * @param newEscaper : Escaper (ASCII, UTF8 or HTML)
+     */
+    public void setEscaper(Escaper newEscaper) {
+        this.escaper = newEscaper;
+    }
+    /**
+     * Answer the policy for replacing characters by entities.
+     * @return Escaper
+     */
+    public Escaper getEscaper() {
+        return escaper;
+    }
+    /**
+     * Answer the buffered output to which content is written.
+     * @return Output
+     */
+    public Output getOutput() {
+        return output;
+    }
     /**
      * Inserts the standard XML header and specifies the UTF-8 encoding.
      */
@@ -99,23 +292,19 @@ public class XMLWriter {
      * @return XMLWriter to allow cascading
      */
 	public XMLWriter end(String expectedTag){
-        int last = stack.size() - 1;
-        String top;
-        try {
-            top = (String) stack.get(last);
-        } catch (ArrayIndexOutOfBoundsException ex) {
+        if (stack.isEmpty())
             throw new RuntimeException("closing:" + expectedTag + " but no end tags were expected");
-        }
 		if (expectedTag != null)
-			if (!top.equals(expectedTag))
-				throw new RuntimeException("closing:" + top + " but expected:" + expectedTag);
-        stack.remove(last);
+			if (!stack.isTop(expectedTag))
+				throw new RuntimeException("closing:" + stack.peek() + " but expected:" + expectedTag);
+        char[] closer = stack.peekCloser();
+        stack.pop();
         this.indent();
-        out.print("</");
-        out.print(top);
-        out.print('>');
+        output.write(closer, 0, closer.length);
         if (pretty)
-            out.print('\n');
+            this.newline();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
         return this;	
 	}
     /**
@@ -149,9 +338,9 @@ public class XMLWriter {
             return this;
         if (doIndent)
             this.indent();
-        XMLWriter.encodeOn(any, out);
+        escapedCount += escaper.encodeOn(any, output);
         if (pretty && appendNewLine)
-            out.print('\n');
+            this.newline();
         return this;
     }
 
@@ -172,7 +361,7 @@ public class XMLWriter {
      * @return XMLWriter to allow cascading
      */
     public XMLWriter raw(char any) {
-        out.print(any);
+        output.write(any);
         return this;
     }    
     
@@ -186,9 +375,9 @@ public class XMLWriter {
     public XMLWriter raw(String any, boolean appendNewLine) {
         if (null == any)
             return this;
-        out.print(any);
+        output.write(any);
         if (pretty && appendNewLine)
-            out.print('\n');
+            this.newline();
         return this;
     }
 
@@ -197,24 +386,122 @@ public class XMLWriter {
      * Because no more output can be written, the stack of open tags is inspected for emptiness.
      */
     public void close() {
-        out.flush();
+        this.finish();
+        output.close();
+    }
+
+    /**
+     * Write all buffered output and flush the underlying stream but leave it open (e.g. for the next response).
+     * Because the document is complete, the stack of open tags is inspected for emptiness.
+     * The counts of the document are reported once, also if finish() is followed by close().
+     */
+    public void finish() {
+        this.flush();
+        if (metrics != null && !documentReported) {
+            documentReported = true;
+            metrics.documentWritten(this);
+        }
         // also check all tags have been closed
         if (!stack.isEmpty())
             throw new RuntimeException("One or more end-tags are missing: " + stack);
-        out.close();
+    }
+
+    /**
+     * Set the policy that decides whether to flush each time a tag is closed.
+     * @param policyOrNull : FlushPolicy || null to flush only when asked
+     */
+    public void setFlushPolicy(FlushPolicy policyOrNull) {
+        this.flushPolicy = policyOrNull;
+        this.flushedChars = output.getCharCount();
+        this.flushedMillis = policyOrNull != null && policyOrNull.isTimed() ? System.currentTimeMillis() : 0;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Set the receiver of the counts of each document, reported by finish() and close().
+     * Setting metrics also measures the time spent writing to the target.
+     * @param metricsOrNull : WriterMetrics || null to report nothing
+     */
+    public void setMetrics(WriterMetrics metricsOrNull) {
+        this.metrics = metricsOrNull;
+        output.setTimed(metricsOrNull != null);
+    }
+
+    public WriterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Answer the number of elements (start tags) written in the current document.
+     * @return int
+     */
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Answer the deepest nesting of elements in the current document; the root has depth 1.
+     * @return int
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Answer the number of characters replaced by the escaper in the current document.
+     * @return int
+     */
+    public int getEscapedCount() {
+        return escapedCount;
+    }
+
+    /**
+     * Count an element written at a depth.
+     */
+    private void opened(int depth) {
+        elementCount++;
+        if (depth > maxDepth)
+            maxDepth = depth;
+    }
+
+    /**
+     * Count elements written outside the writer (e.g. by a Fragment).
+     * @param elements : int
+     * @param depth : int the deepest nesting of these elements
+     */
+    void counted(int elements, int depth) {
+        if (elements == 0)
+            return;
+        elementCount += elements;
+        if (depth > maxDepth)
+            maxDepth = depth;
+    }
+
+    /**
+     * Count characters replaced outside the writer (e.g. by a Fragment).
+     */
+    void escaped(int count) {
+        escapedCount += count;
+    }
+
+    private void applyFlushPolicy() {
+        long now = flushPolicy.isTimed() ? System.currentTimeMillis() : 0;
+        if (flushPolicy.shouldFlush(output.getCharCount() - flushedChars, stack.size(), now - flushedMillis))
+            this.flush();
     }
 
     /**
      * Convert a String to an encoded version of that String replacing
      * ML delimiter characters by special entities.
+     * Answer the argument itself if no characters needed replacement.
      * @param any
      * @return encoded argument String
      */
     public static String encoded(String any) {
-        // Replace <, >, ' and " by special entities
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(any.length());
-        XMLWriter.encodeOn(any, new PrintStream(bos));
-        return bos.toString();
+        return Escaper.ASCII.encoded(any);
     }
     /**
      * Wrier the argument String any encoded on a stream
@@ -222,31 +509,42 @@ public class XMLWriter {
      * @param stream
      */
     public static void encodeOn(String any, PrintStream stream) {
-        /**
-         * See google groups
-         * http://groups.google.com/groups?q=java+escape+xml&start=10&hl=en&lr=
-         * &ie=UTF-8&selm=JPyaOQm2Fo7O2PeLfDykYBAsjKGw%404ax.com&rnum=12
-         */
         if (any == null || any.length() < 1) {
             return;
         }
-        for (int i = 0; i < any.length(); i++) {
-            char c = any.charAt(i);
-            int v = (int) c;
-            if (v < 32 || v > 127 || v == 38 || v == 60 || v == 62 || v == 34) {
-                // we must escape a character in format &#22;
-                // 38 is ampersand &
-                // 60 is smaller <
-                // 62 is larger >
-                // 34 is quote "
-                stream.print('&');
-                stream.print('#');
-                stream.print(v);
-                stream.print(';');
-            } else {
-                stream.print(c);
-            }
-        }
+        Output output = new PrintStreamOutput(stream, any.length() + 16);
+        Escaper.ASCII.encodeOn(any, output);
+        output.flushBuffer();
+    }
+    /**
+     * Write the argument any encoded on an output
+     * @param any : CharSequence || null
+     * @param output
+     */
+    public static void encodeOn(CharSequence any, Output output) {
+        Escaper.ASCII.encodeOn(any, output);
+    }
+    /**
+     * Write a range of characters encoded on an output
+     * @param chars
+     * @param offset : index of the first character
+     * @param length : number of characters
+     * @param output
+     */
+    public static void encodeOn(char[] chars, int offset, int length, Output output) {
+        Escaper.ASCII.encodeOn(chars, offset, length, output);
+    }
+    /**
+     * Output a range of characters which will be encoded (e.g. replacing &lt; and &gt;)
+     * No indentation is performed.
+     * @param chars : char[]
+     * @param offset : int index of the first character
+     * @param length : int number of characters
+     * @return XMLWriter to allow cascading
+     */
+    public XMLWriter print(char[] chars, int offset, int length) {
+        escapedCount += escaper.encodeOn(chars, offset, length, output);
+        return this;
     }
 
     /**
@@ -255,7 +553,7 @@ public class XMLWriter {
      * @return XMLWriter to allow cascading 
      */
     public XMLWriter tag(String tag) {
-        return this.tag(tag, null, false);
+        return this.tag(tag, (Map) null, false);
     }
 
     /**
@@ -266,16 +564,17 @@ public class XMLWriter {
      */
     public XMLWriter tag(String tag, String attributesOrNull) {
         this.indent();
-        stack.add(tag);
-        out.print('<');
-        out.print(stack.get(stack.size() - 1));
+        stack.push(tag);
+        this.opened(stack.size());
+        output.write('<');
+        output.write(tag);
         if (attributesOrNull != null) {
-            out.print(' ');
-            out.print(attributesOrNull);
+            output.write(' ');
+            output.write(attributesOrNull);
         }
-        out.print('>');
+        output.write('>');
         if (pretty)
-            out.print('\n');
+            this.newline();
         return this;
     }
 
@@ -288,30 +587,58 @@ public class XMLWriter {
      */
     public XMLWriter tag(String tag, Map attributesOrNull, boolean isEmpty) {
         this.indent();
-        stack.add(tag);
-        out.print('<');
-        out.print(stack.get(stack.size() - 1));
+        output.write('<');
+        output.write(tag);
         this.printAttributes(attributesOrNull);
-        if (isEmpty) {
-            stack.remove(stack.size() - 1);
-            out.print("/");
-        }
-        out.print('>');
+        if (isEmpty)
+            output.write('/');
+        else
+            stack.push(tag);
+        this.opened(isEmpty ? stack.size() + 1 : stack.size());
+        output.write('>');
         if (pretty)
-            out.print('\n');
+            this.newline();
+        if (isEmpty && flushPolicy != null)
+            this.applyFlushPolicy();
+        return this;
+    }
+
+    /**
+     * Write and add a new tag using its attributes (if any)
+     * @param tag : String
+     * @param attributesOrNull : Attributes
+     * @param isEmpty : boolean that says whether it is an empty tag (no children or content)
+     * @return XMLWriter to allow cascading 
+     */
+    public XMLWriter tagWith(String tag, Attributes attributesOrNull, boolean isEmpty) {
+        this.indent();
+        output.write('<');
+        output.write(tag);
+        if (attributesOrNull != null)
+            escapedCount += attributesOrNull.writeOn(output, escaper);
+        if (isEmpty)
+            output.write('/');
+        else
+            stack.push(tag);
+        this.opened(isEmpty ? stack.size() + 1 : stack.size());
+        output.write('>');
+        if (pretty)
+            this.newline();
+        if (isEmpty && flushPolicy != null)
+            this.applyFlushPolicy();
         return this;
     }
 
     private void printAttributes(Map attributesOrNull) {
         if (attributesOrNull != null) {
-            Iterator it = attributesOrNull.keySet().iterator();
+            Iterator it = attributesOrNull.entrySet().iterator();
             while (it.hasNext()) {
-                String key = (String) it.next();
-                out.print(' '); // separator
-                out.print(key);
-                out.print("=\"");
-                XMLWriter.encodeOn((String) attributesOrNull.get(key), out);
-                out.print('\"');
+                Map.Entry each = (Map.Entry) it.next();
+                output.write(' '); // separator
+                output.write((String) each.getKey());
+                output.write("=\"");
+                escapedCount += escaper.encodeOn((String) each.getValue(), output);
+                output.write('\"');
             }
         }
     }
@@ -326,18 +653,21 @@ public class XMLWriter {
     public XMLWriter tagged(String tag, String any, boolean encode) {
     	if (any == null) return this;
         this.indent();
-        out.print('<');
-        out.print(tag);
-        out.print('>');
+        this.opened(stack.size() + 1);
+        output.write('<');
+        output.write(tag);
+        output.write('>');
         if (encode)
-            XMLWriter.encodeOn(any, out);
+            escapedCount += escaper.encodeOn(any, output);
         else
             this.raw(any);
-        out.print("</");
-        out.print(tag);
-        out.print('>');
+        output.write("</");
+        output.write(tag);
+        output.write('>');
         if (pretty)
-            out.print('\n');
+            this.newline();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
         return this;
     }
     /**
@@ -347,18 +677,82 @@ public class XMLWriter {
      * @return XMLWriter to allow cascading 
      */
     public XMLWriter tagged(String tag, int number) {
+        this.startTagged(tag);
+        output.writeInt(number);
+        return this.endTagged(tag);
+    }
+    /**
+     * Writes a long enclosed by a start and end tag.
+     * @param tag : String the enclosing tag
+     * @param number : long
+     * @return XMLWriter to allow cascading 
+     */
+    public XMLWriter tagged(String tag, long number) {
+        this.startTagged(tag);
+        output.writeLong(number);
+        return this.endTagged(tag);
+    }
+    /**
+     * Writes a double enclosed by a start and end tag.
+     * @param tag : String the enclosing tag
+     * @param number : double
+     * @return XMLWriter to allow cascading 
+     */
+    public XMLWriter tagged(String tag, double number) {
+        this.startTagged(tag);
+        output.writeDouble(number);
+        return this.endTagged(tag);
+    }
+    /**
+     * Writes true or false enclosed by a start and end tag.
+     * @param tag : String the enclosing tag
+     * @param value : boolean
+     * @return XMLWriter to allow cascading 
+     */
+    public XMLWriter tagged(String tag, boolean value) {
+        this.startTagged(tag);
+        output.writeBoolean(value);
+        return this.endTagged(tag);
+    }
+    private void startTagged(String tag) {
         this.indent();
-        out.print('<');
-        out.print(tag);
-        out.print('>');
-        this.raw(String.valueOf(number));
-        out.print("</");
-        out.print(tag);
-        out.print('>');
+        this.opened(stack.size() + 1);
+        output.write('<');
+        output.write(tag);
+        output.write('>');
+    }
+    private XMLWriter endTagged(String tag) {
+        output.write('<');
+        output.write('/');
+        output.write(tag);
+        output.write('>');
         if (pretty)
-            out.print('\n');
+            this.newline();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
         return this;
     }
+    /**
+     * Writes a Date in xsd:dateTime format (UTC) enclosed by a start and end tag.
+     * @param tag : String the enclosing tag
+     * @param value : Date || null
+     * @return XMLWriter to allow cascading 
+     */
+    public XMLWriter tagged(String tag, Date value) {
+        if (value == null) return this;
+        return this.taggedDateTime(tag, value.getTime());
+    }
+    /**
+     * Writes a timestamp in xsd:dateTime format (UTC) enclosed by a start and end tag.
+     * @param tag : String the enclosing tag
+     * @param millis : long milliseconds since 1970-01-01T00:00:00Z
+     * @return XMLWriter to allow cascading 
+     */
+    public XMLWriter taggedDateTime(String tag, long millis) {
+        this.startTagged(tag);
+        DateTimeFormat.writeOn(millis, output);
+        return this.endTagged(tag);
+    }
     /**
      * Writes a String enclosed by a start and end tag.
      * @param tag : String the enclosing tag
@@ -370,19 +764,53 @@ public class XMLWriter {
     public XMLWriter tagged(String tag, Map attributesOrNull, String any, boolean encode) {
     	if (any == null) return this;
         this.indent();
-        out.print('<');
-        out.print(tag);
+        this.opened(stack.size() + 1);
+        output.write('<');
+        output.write(tag);
         this.printAttributes(attributesOrNull);
-        out.print('>');
+        output.write('>');
         if (encode)
-            XMLWriter.encodeOn(any, out);
+            escapedCount += escaper.encodeOn(any, output);
         else
             this.raw(any);
-        out.print("</");
-        out.print(tag);
-        out.print('>');
+        output.write("</");
+        output.write(tag);
+        output.write('>');
         if (pretty)
-            out.print('\n');
+            this.newline();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
+        return this;
+    }
+
+    /**
+     * Writes a String enclosed by a start and end tag.
+     * @param tag : String the enclosing tag
+     * @param attributesOrNull : Attributes for passing any attributes
+     * @param any : String the contents
+     * @param encode : if true apply entity encoding
+     * @return XMLWriter to allow cascading  
+     */
+    public XMLWriter taggedWith(String tag, Attributes attributesOrNull, String any, boolean encode) {
+    	if (any == null) return this;
+        this.indent();
+        this.opened(stack.size() + 1);
+        output.write('<');
+        output.write(tag);
+        if (attributesOrNull != null)
+            escapedCount += attributesOrNull.writeOn(output, escaper);
+        output.write('>');
+        if (encode)
+            escapedCount += escaper.encodeOn(any, output);
+        else
+            this.raw(any);
+        output.write("</");
+        output.write(tag);
+        output.write('>');
+        if (pretty)
+            this.newline();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
         return this;
     }
 
@@ -393,30 +821,108 @@ public class XMLWriter {
      */
     public XMLWriter emptytag(String tag) {
         this.indent();
-        out.print("<" + tag + "/>");
+        this.opened(stack.size() + 1);
+        output.write('<');
+        output.write(tag);
+        output.write("/>");
         if (pretty)
-            out.print("\n");
+            this.newline();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
+        return this;
+    }
+
+    /**
+     * Write a recorded Fragment with a value for each of its placeholders.
+     * @param fragment : Fragment
+     * @param valuesOrNull : Object[] indexed like the placeholders
+     * @return XMLWriter to allow cascading
+     */
+    public XMLWriter fragment(Fragment fragment, Object[] valuesOrNull) {
+        fragment.writeOn(this, valuesOrNull);
         return this;
     }
 
     /**
-     * Increase the indent level for pretty output of the content.
+     * Write the indentation for the current nesting level (if pretty).
      * @return XMLWriter to allow cascading 
      */
     public XMLWriter indent() {
         if (!pretty)
             return this;
-        for (int i = stack.size(); i > 0; i--){
-        	this.doIndent();
+        int width = (indentLevel + stack.size()) * indentWidth;
+        if (width > spaces.length) {
+            spaces = new char[Math.max(width, spaces.length * 2)];
+            Arrays.fill(spaces, ' ');
         }
+        output.write(spaces, 0, width);
         return this;
     }
 
+    /**
+     * Change the number of spaces written for each nesting level (default 2).
+     * @param width : int
+     */
+    public void setIndentWidth(int width) {
+        this.indentWidth = width;
+    }
+
+    /**
+     * Change the number of levels by which all tags are indented (default 0).
+     * Use this when the output is inserted at that nesting level of another document.
+     * @param level : int
+     */
+    public void setIndentLevel(int level) {
+        this.indentLevel = level;
+    }
+
+    /**
+     * Answer the nesting level of the next tag, i.e. the indent level plus the number of open tags.
+     * @return int
+     */
+    public int getDepth() {
+        return indentLevel + stack.size();
+    }
+
+    /**
+     * Use the pretty flag, escaper, indentation and line separator of another writer.
+     * @param other : XMLWriter
+     */
+    public void copySettingsFrom(XMLWriter other) {
+        this.pretty = other.pretty;
+        this.escaper = other.escaper;
+        this.indentWidth = other.indentWidth;
+        this.newline = other.newline;
+    }
+
+    /**
+     * Change the line separator written after tags and content (default "\n").
+     * @param separator : String e.g. "\r\n"
+     */
+    public void setNewline(String separator) {
+        this.newline = separator.toCharArray();
+    }
+
+    /**
+     * Write the line separator.
+     */
+    protected void newline() {
+        if (newline.length == 1)
+            output.write(newline[0]);
+        else
+            output.write(newline, 0, newline.length);
+    }
+
     /**
      * Flush the contents of the output stream.
      */
     public void flush() {
-        out.flush();
+        output.flush();
+        if (flushPolicy != null) {
+            flushedChars = output.getCharCount();
+            if (flushPolicy.isTimed())
+                flushedMillis = System.currentTimeMillis();
+        }
     }
 
     /**
@@ -427,9 +933,10 @@ public class XMLWriter {
      */
     public XMLWriter opentag(String tag) {
         this.indent();
-        out.print('<');
-        out.print(tag);        
-        stack.add(tag);
+        output.write('<');
+        output.write(tag);        
+        stack.push(tag);
+        this.opened(stack.size());
         return this;
     }
 
@@ -442,11 +949,11 @@ public class XMLWriter {
     public XMLWriter attribute(String key, String value) {
         if (value == null || value.length() == 0)
             return this;
-        out.print(' ');
-        out.print(key);
-        out.print("=\"");
-        XMLWriter.encodeOn(value, out);
-        out.print("\"");
+        output.write(' ');
+        output.write(key);
+        output.write("=\"");
+        escapedCount += escaper.encodeOn(value, output);
+        output.write('\"');
         return this;
     }
 
@@ -457,7 +964,10 @@ public class XMLWriter {
      * @return XMLWriter to allow cascading
      */
     public XMLWriter attribute(String key, boolean value) {
-        return this.attribute(key, String.valueOf(value));
+        this.startAttribute(key);
+        output.writeBoolean(value);
+        output.write('\"');
+        return this;
     }
 
     /**
@@ -467,39 +977,77 @@ public class XMLWriter {
      * @return XMLWriter to allow cascading
      */
     public XMLWriter attribute(String key, int value) {
-        return this.attribute(key, String.valueOf(value));
+        this.startAttribute(key);
+        output.writeInt(value);
+        output.write('\"');
+        return this;
     }
     
     /**
      * Write a single attribute which is a key-value pair.
      * @param key : String will not be encoded
-     * @param value : int
+     * @param value : long
      * @return XMLWriter to allow cascading
      */
     public XMLWriter attribute(String key, long value) {
-        return this.attribute(key, String.valueOf(value));
+        this.startAttribute(key);
+        output.writeLong(value);
+        output.write('\"');
+        return this;
+    }
+    
+    /**
+     * Write a single attribute which is a key-value pair.
+     * @param key : String will not be encoded
+     * @param value : double
+     * @return XMLWriter to allow cascading
+     */
+    public XMLWriter attribute(String key, double value) {
+        this.startAttribute(key);
+        output.writeDouble(value);
+        output.write('\"');
+        return this;
     }
     
+    private void startAttribute(String key) {
+        output.write(' ');
+        output.write(key);
+        output.write('=');
+        output.write('\"');
+    }
+
     /**
-     * Write a single attribute which is a key-value pair. Uses xsd:dateTime format
+     * Write a single attribute which is a key-value pair. Uses xsd:dateTime format in UTC.
      * @param key : String will not be encoded
      * @param value : Date || null
      * @return XMLWriter to allow cascading
      */
     public XMLWriter attribute(String key, Date value) {
     	if (value == null) return this;
-    	String formatted  = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'").format(value);    	
-        return this.attribute(key, formatted);
+        return this.attributeDateTime(key, value.getTime());
     }    
 
+    /**
+     * Write a single attribute which is a key-value pair. Uses xsd:dateTime format in UTC.
+     * @param key : String will not be encoded
+     * @param millis : long milliseconds since 1970-01-01T00:00:00Z
+     * @return XMLWriter to allow cascading
+     */
+    public XMLWriter attributeDateTime(String key, long millis) {
+        this.startAttribute(key);
+        DateTimeFormat.writeOn(millis, output);
+        output.write('\"');
+        return this;
+    }
+
     /**
 	 * Close the opening tag with attributes. (&gt;)
 	 * @return the writer
 	 */
 	public XMLWriter closetag() {
-	    out.print('>');
+	    output.write('>');
 	    if (pretty)
-	        out.print("\n");
+	        this.newline();
 	    return this;
 	}
 
@@ -511,10 +1059,12 @@ public class XMLWriter {
      * 
      */
     public XMLWriter closeemptytag() {
-        out.print("/>");
+        output.write("/>");
         if (pretty)
-            out.print("\n");
-        stack.remove(stack.get(stack.size() - 1));
+            this.newline();
+        stack.pop();
+        if (flushPolicy != null)
+            this.applyFlushPolicy();
         return this;
     }
     /**
@@ -608,11 +1158,16 @@ public class XMLWriter {
      * @return XMLWriter this
      */
     public XMLWriter tag(String tag, String attributeKey, String attributeValue) {
-        return this.tag(tag, newMap(attributeKey, attributeValue), false);
+        return this.tagWith(tag, this.attributes().add(attributeKey, attributeValue), false);
     }
-    
-    private void doIndent(){
-    	out.print(' ');
-        out.print(' ');
+
+    /**
+     * Answer the reusable Attributes of the receiver, cleared.
+     * Its pairs must be written (e.g. using tagWith(String,Attributes,boolean)) before
+     * this method is sent again.
+     * @return Attributes
+     */
+    public Attributes attributes() {
+        return attributes.clear();
     }
 }
\ No newline at end of file
@@ -18,6 +18,8 @@ package com.philemonworks.writer;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 /**
  * XSDWriter is a helper class to produce xml schemas in Java.
@@ -34,6 +36,18 @@ public class XSDWriter extends XMLWriter {
 	public XSDWriter(OutputStream out) {
 		super(out);
 	}
+
+	public XSDWriter(Writer writer) {
+		super(writer);
+	}
+
+	public XSDWriter(WritableByteChannel channel) {
+		super(channel);
+	}
+
+	public XSDWriter(Output output) {
+		super(output);
+	}
 	
 	public XSDWriter openSchema2001(){
 		this.raw("<"+schemaNamespace+":schema xmlns:"+schemaNamespace+"=\"http://www.w3.org/2001/XMLSchema\" >\n");
@@ -45,12 +59,12 @@ public class XSDWriter extends XMLWriter {
 	}
 	
 	public XSDWriter complexType(){
-		this.tag(schemaNamespace+":complexType",null,false);
+		this.tag(schemaNamespace+":complexType");
 		return this;
 	}
 	
 	public XSDWriter element(String name,String type){
-		this.tag(schemaNamespace+":element",this.newMap("name", name, "type", type),true);
+		this.tagWith(schemaNamespace+":element",this.attributes().add("name", name).add("type", type),true);
 		return this;
 	}	
 	
@@ -65,7 +79,7 @@ public class XSDWriter extends XMLWriter {
 	 * @return
 	 */
 	public XSDWriter element(String name){
-		this.tag(schemaNamespace+":element",this.newMap("name", name),false);
+		this.tagWith(schemaNamespace+":element",this.attributes().add("name", name),false);
 		return this;
 	}
 	
@@ -82,6 +96,7 @@ public class XSDWriter extends XMLWriter {
 	}
 	
 	public XSDWriter requiredStringElement(String name){
-		return this.element(this.newMap("name",name,"type","xs:string","minOccurs","1","maxOccurs","1"));
+		this.tagWith(schemaNamespace+":element",this.attributes().add("name",name).add("type","xs:string").add("minOccurs","1").add("maxOccurs","1"),true);
+		return this;
 	}
 }
@@ -1,5 +1,11 @@
 package com.philemonworks.util.test;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import com.philemonworks.util.ToStringBuilder;
 
 import junit.framework.TestCase;
@@ -23,4 +29,152 @@ public class ToStringBuilderTest extends TestCase {
 	public void testThis(){
 		System.out.println(ToStringBuilder.build(this,false,false, 0));
 	}		
+	public void testCachedClassInfo() throws Exception {
+		// classInfoFor is package-private
+		Method classInfoFor = ToStringBuilder.class.getDeclaredMethod("classInfoFor", new Class[] { Class.class });
+		classInfoFor.setAccessible(true);
+		Object info = classInfoFor.invoke(null, new Object[] { Sample.class });
+		Sample sample = new Sample();
+		String first = ToStringBuilder.build(sample,false,false, 0);
+		assertEquals(first, ToStringBuilder.build(sample,false,false, 0));
+		assertSame(info, classInfoFor.invoke(null, new Object[] { Sample.class }));
+		sample.name = "y";
+		assertEquals("ToStringBuilderTest$Sample[hidden=*no getter*,name=y,count=3,on=true]", ToStringBuilder.build(sample,false,false, 0));
+		assertEquals("ToStringBuilderTest$Sample[name=y,count=3,on=true]", ToStringBuilder.build(sample,true,false, 0));
+	}
+	public void testTypedAccess(){
+		Primitives primitives = new Primitives();
+		ToStringBuilder reflective = new ToStringBuilder();
+		reflective.setTypedAccess(false);
+		String expected = "ToStringBuilderTest$Primitives[i=-1,j=12345678901,z=true,d=0.5,f=1.5,c=x,b=7,s=300,hidden=3]";
+		assertEquals(expected, reflective.buildFrom(primitives, false, false, 0));
+		assertEquals(expected, new ToStringBuilder().buildFrom(primitives, false, false, 0));
+	}
+	public static class Primitives {
+		public int i = -1;
+		public long j = 12345678901L;
+		public boolean z = true;
+		public double d = 0.5;
+		public float f = 1.5f;
+		public char c = 'x';
+		public byte b = 7;
+		public short s = 300;
+		private int hidden = 3;
+		public int getHidden() { return hidden; }
+	}
+	public void testRecursion(){
+		Node a = new Node("a");
+		Node b = new Node("b");
+		a.next = b;
+		b.next = a;
+		assertEquals("ToStringBuilderTest$Node[name=a,next=aToStringBuilderTest$Node@" + b.hashCode() + "]", ToStringBuilder.build(a));
+		String cycle = "ToStringBuilderTest$Node[name=a,next=ToStringBuilderTest$Node[name=b,next=aToStringBuilderTest$Node@" + a.hashCode() + "]]";
+		assertEquals(cycle, ToStringBuilder.build(a, true, true, 5));
+		StringBuffer buffer = new StringBuffer("node:");
+		assertSame(buffer, new ToStringBuilder().buildOn(a, buffer, true, true, 5));
+		assertEquals("node:" + cycle, buffer.toString());
+		a.next = null;
+		assertEquals("ToStringBuilderTest$Node[name=a,next=null]", ToStringBuilder.build(a, true, false, 5));
+		assertEquals("ToStringBuilderTest$Node[name=a]", ToStringBuilder.build(a, new StringBuffer()).toString());
+	}
+	public void testSharedBuilder() throws InterruptedException {
+		final ToStringBuilder shared = new ToStringBuilder();
+		final Sample sample = new Sample();
+		final String expected = shared.buildFrom(sample, false, false, 1);
+		final String[] failure = new String[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						String result = shared.buildFrom(sample, false, false, 1);
+						if (!expected.equals(result))
+							failure[0] = result;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++)
+			threads[t].join();
+		assertNull(failure[0]);
+	}
+	public void testLazy(){
+		Sample sample = new Sample();
+		Object lazy = ToStringBuilder.lazy(sample);
+		sample.name = "later";
+		assertEquals(ToStringBuilder.build(sample), lazy.toString());
+		assertTrue(lazy.toString().indexOf("name=later") != -1);
+	}
+	public void testLimits(){
+		Primitives primitives = new Primitives();
+		ToStringBuilder builder = new ToStringBuilder();
+		builder.setMaxFields(2);
+		assertEquals("ToStringBuilderTest$Primitives[i=-1,j=12345678901,...]", builder.buildFrom(primitives, true, true, 0));
+		builder = new ToStringBuilder();
+		builder.setMaxLength(35);
+		assertEquals("ToStringBuilderTest$Primitives[i=-1...", builder.buildFrom(primitives, true, true, 0));
+		String flat = new ToStringBuilder().buildFrom(primitives, true, true, 0);
+		builder.setMaxLength(flat.length());
+		assertEquals(flat, builder.buildFrom(primitives, true, true, 0));
+		builder.setMaxLength(flat.length() - 1);
+		assertEquals(flat.substring(0, flat.length() - 1) + "...", builder.buildFrom(primitives, true, true, 0));
+		Node a = new Node("a");
+		a.next = new Node("abcdefghijklmnopqrstuvwxyz");
+		String full = new ToStringBuilder().buildFrom(a, true, true, 0);
+		builder.setMaxLength(full.length());
+		assertEquals(full, builder.buildFrom(a, true, true, 0));
+		builder.setMaxLength(40);
+		String cut = builder.buildFrom(a, true, true, 3);
+		assertEquals("ToStringBuilderTest$Node[name=a,next=ToS...", cut);
+		assertEquals(full.substring(0, 40) + "...", builder.buildFrom(a, true, true, 0));
+		StringBuffer buffer = new StringBuffer("prefix:");
+		builder.setMaxLength(10);
+		builder.buildOn(a, buffer, true, true, 0);
+		assertEquals("prefix:ToStringBu...", buffer.toString());
+		try {
+			builder.setMaxLength(0);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+	public void testContents(){
+		Holder holder = new Holder();
+		assertEquals("ToStringBuilderTest$Holder[ints=int[4],bytes=byte[0],names=String[2],list=String{3},set=Integer{1},map=String=Integer{2}]", ToStringBuilder.build(holder));
+		ToStringBuilder builder = new ToStringBuilder();
+		builder.setPreviewSize(2);
+		assertEquals("ToStringBuilderTest$Holder[ints=int[4](1,2,...),bytes=byte[0],names=String[2](a,null),list=String{3}(x,y,...),set=Integer{1}(7),map=String=Integer{2}(one=1,two=2)]",
+				builder.buildFrom(holder, true, true, 0));
+		builder.setMaxLength(50);
+		assertEquals("ToStringBuilderTest$Holder[ints=int[4](1,2,...),by...", builder.buildFrom(holder, true, true, 0));
+	}
+	public static class Holder {
+		public int[] ints = new int[] { 1, 2, 3, 4 };
+		public byte[] bytes = new byte[0];
+		public Object[] names = new String[] { "a", null };
+		public List list = new ArrayList();
+		public HashSet set = new HashSet();
+		public Map map = new LinkedHashMap();
+		public Holder() {
+			list.add("x");
+			list.add("y");
+			list.add("z");
+			set.add(new Integer(7));
+			map.put("one", new Integer(1));
+			map.put("two", new Integer(2));
+		}
+	}
+	public static class Node {
+		public String name;
+		public Node next;
+		public Node(String name) { this.name = name; }
+	}
+	public static class Sample {
+		private String hidden = "h";
+		public String name = "x";
+		private int count = 3;
+		private boolean on = true;
+		public int getCount() { return count; }
+		public boolean isOn() { return on; }
+	}
 }
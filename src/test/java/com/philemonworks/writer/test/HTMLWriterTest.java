@@ -0,0 +1,147 @@
+package com.philemonworks.writer.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.Map;
+import com.philemonworks.writer.Fragment;
+import com.philemonworks.writer.FragmentRecorder;
+import com.philemonworks.writer.HTMLWriter;
+import com.philemonworks.writer.RowCursor;
+import com.philemonworks.writer.Table;
+import com.philemonworks.writer.Utf8Output;
+import junit.framework.TestCase;
+
+/**
+ * @author E.M.Micklei
+ *
+ */
+public class HTMLWriterTest extends TestCase {
+    private StringWriter sw;
+    private HTMLWriter html;
+
+    protected void setUp() {
+        sw = new StringWriter();
+        html = new HTMLWriter(sw);
+        html.pretty = false;
+    }
+    private String written() {
+        html.flush();
+        return sw.toString();
+    }
+    public void testButton() {
+        html.button("ok", "1", "submit", "OK", null, "color:red");
+        assertEquals("<button name=\"ok\" value=\"1\" type=\"submit\" onclick=\"\" style=\"color:red\">OK</button>", written());
+    }
+    public void testNullAttributeValues() {
+        html.anchor(null).base(null).tag("x", "k", null).end();
+        assertEquals("<a name=\"\"/><base href=\"\"/><x k=\"\"></x>", written());
+    }
+    public void testImg() {
+        html.img("a.png", null).p("note", "x&y");
+        assertEquals("<img src=\"a.png\" alt=\"\"/><p class=\"note\">x&#38;y</p>", written());
+    }
+    public void testAttributes() {
+        html.tagWith("div", html.attributes().add("id", "d1").add("class", ""), false).end();
+        assertEquals("<div id=\"d1\" class=\"\"></div>", written());
+    }
+    public void testFlushAtDocumentEnd() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        HTMLWriter streamed = new HTMLWriter(bytes);
+        streamed.pretty = false;
+        streamed.tag("div").tag("p");
+        streamed.print("x&y").end();
+        assertEquals("", bytes.toString());
+        streamed.end();
+        assertEquals("<div><p>x&#38;y</p></div>", bytes.toString());
+        streamed.emptytag("br");
+        assertEquals("<div><p>x&#38;y</p></div><br/>", bytes.toString());
+    }
+    public void testStreamedTable() {
+        final Object[][] data = { { "a<b", null }, { new Integer(2), "" } };
+        RowCursor cursor = new RowCursor() {
+            int row = -1;
+            public boolean next() {
+                return ++row < data.length;
+            }
+            public int getColumnCount() {
+                return 2;
+            }
+            public Object getValue(int column) {
+                return data[row][column - 1];
+            }
+            public Map getRowAttributes() {
+                return row == 1 ? html.newMap("class", "odd") : null;
+            }
+        };
+        html.table(cursor, null, new String[] { "A", "B" });
+        assertEquals("<table><tr><th>A</th><th>B</th></tr>"
+                + "<tr><td>a&#60;b</td><td class=\"empty\">&nbsp;</td></tr>"
+                + "<tr class=\"odd\"><td>2</td><td></td></tr></table>", written());
+    }
+    public void testRows() {
+        html.openTable(null, null).row(new Object[] { "x" }).closeTable();
+        assertEquals("<table><tr><td>x</td></tr></table>", written());
+    }
+    public void testNestedTableInRow() {
+        HTMLWriter custom = new HTMLWriter(sw) {
+            protected void nestedTable(Table aTable) {
+                this.raw("[nested]");
+            }
+        };
+        custom.pretty = false;
+        custom.openTable(null, null).row(new Object[] { new Table() }).closeTable();
+        custom.flush();
+        assertEquals("<table><tr><td>[nested]</td></tr></table>", sw.toString());
+    }
+    public void testFragment() throws Exception {
+        FragmentRecorder recorder = new FragmentRecorder();
+        HTMLWriter header = recorder.writer();
+        header.pretty = false;
+        header.html().head();
+        header.tag("title");
+        recorder.text("title");
+        header.end().end().opentag("body");
+        recorder.attribute("class", "style");
+        header.closetag();
+        header.raw("<div class=\"a long static run of markup written as bytes\">", false);
+        recorder.raw("content");
+        Fragment page = recorder.build();
+        assertEquals(3, page.size());
+        assertEquals(1, page.indexOf("style"));
+
+        FragmentRecorder footerRecorder = new FragmentRecorder(new String[] { "html", "body" });
+        footerRecorder.writer().pretty = false;
+        footerRecorder.writer().raw("</div>", false);
+        footerRecorder.writer().end("body").end("html");
+        Fragment footer = footerRecorder.build();
+
+        html.fragment(page, new Object[] { "a<b", "main", "<hr/>" });
+        html.tagged("p", 7).fragment(footer, null);
+        assertEquals(5, html.getElementCount());
+        assertEquals(3, html.getMaxDepth());
+        assertEquals(1, html.getEscapedCount());
+        html.close();
+        String expected = "<html><head><title>a&#60;b</title></head><body class=\"main\">"
+                + "<div class=\"a long static run of markup written as bytes\"><hr/><p>7</p></div></body></html>";
+        assertEquals(expected, sw.toString());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        HTMLWriter utf8 = new HTMLWriter(Channels.newChannel(bos));
+        utf8.pretty = false;
+        Map values = new HashMap();
+        values.put("title", "\u00e9");
+        values.put("content", new Integer(42));
+        page.writeOn(utf8, values);
+        footer.writeOn(utf8, (Object[]) null);
+        utf8.close();
+        assertEquals("<html><head><title>&#233;</title></head><body class=\"\">"
+                + "<div class=\"a long static run of markup written as bytes\">42</div></body></html>", new String(bos.toByteArray(), "UTF-8"));
+        assertEquals(bos.size(), utf8.getOutput().getCharCount());
+        Utf8Output encoded = new Utf8Output(Channels.newChannel(new ByteArrayOutputStream()));
+        encoded.write('a');
+        encoded.write(ByteBuffer.wrap("\u00e9\ud83d\ude00".getBytes("UTF-8")));
+        assertEquals(4, encoded.getCharCount());
+    }
+}
@@ -0,0 +1,212 @@
+package com.philemonworks.writer.test;
+
+import java.io.StringWriter;
+import java.util.Map;
+import com.philemonworks.writer.HTMLWriter;
+import com.philemonworks.writer.ParallelTableRenderer;
+import com.philemonworks.writer.Table;
+import junit.framework.TestCase;
+
+/**
+ * @author E.M.Micklei
+ *
+ */
+public class TableTest extends TestCase {
+    public void testPutGet() {
+        Table table = new Table(2, 2);
+        table.put(1, 1, "a");
+        table.put(3, 5, 42);
+        assertEquals(3, table.getMaxRows());
+        assertEquals(5, table.getMaxColumns());
+        assertEquals("a", table.getCellAt(1, 1).contents);
+        assertEquals("42", ((Table.Cell) table.get(3, 5)).contents);
+        assertNull(table.getCellAt(2, 1));
+        assertFalse(table.hasRow(2));
+        Map row = table.getRowAt(3);
+        assertEquals(1, row.size());
+        assertSame(table.getCellAt(3, 5), row.get(new Integer(5)));
+        try {
+            row.put(new Integer(1), "lost");
+            fail("snapshot must be unmodifiable");
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+    public void testSparseRow() {
+        Table table = new Table();
+        table.put(1, 2, "b");
+        table.put(1, Table.MAX_DENSE_COLUMNS + 10, "far");
+        assertEquals("b", table.getCellAt(1, 2).contents);
+        assertEquals("far", table.getCellAt(1, Table.MAX_DENSE_COLUMNS + 10).contents);
+        assertEquals(2, table.getRowAt(1).size());
+    }
+    public void testRender() {
+        Table table = new Table();
+        table.put(1, 1, "h1");
+        table.put(1, 2, "h2");
+        table.put(2, 2, "x");
+        table.put(3, 1, 2, 1, "span");
+        table.setRowAttributesMap(4, null);
+        StringWriter sw = new StringWriter();
+        HTMLWriter html = new HTMLWriter(sw);
+        html.pretty = false;
+        html.table(table);
+        html.flush();
+        assertEquals("<table><tr><th>h1</th><th>h2</th></tr>"
+                + "<tr><td class=\"empty\">&nbsp;</td><td>x</td></tr>"
+                + "<tr><td rowspan=\"2\">span</td><td class=\"empty\">&nbsp;</td></tr>"
+                + "<tr><td class=\"empty\">&nbsp;</td></tr></table>", sw.toString());
+    }
+    public void testCellAttributes() {
+        Table.CellStyle number = new Table.CellStyle("class", "number").with("align", "right");
+        assertEquals("number", number.getAttribute("class"));
+        assertEquals(1, new Table.CellStyle("class", "x").with("class", "y").size());
+        Table table = new Table();
+        table.firstRowIsHeader = false;
+        table.put(1, 1, "1").setStyle(number);
+        Table.Cell cell = table.put(1, 2, "2");
+        cell.setStyle(number);
+        cell.setAttribute("align", "left");
+        cell.setAttribute("colspan", "2");
+        cell.setAttribute("id", "two");
+        cell.setAttribute("id", null);
+        assertEquals(2, cell.getColspan());
+        assertEquals("2", cell.getAttribute("colspan"));
+        assertEquals("left", cell.getAttribute("align"));
+        assertEquals("number", cell.getAttribute("class"));
+        assertNull(cell.getAttribute("id"));
+        Map attributes = cell.getAttributesMap();
+        assertEquals(3, attributes.size());
+        try {
+            attributes.put("id", "lost");
+            fail("snapshot must be unmodifiable");
+        } catch (UnsupportedOperationException ex) {
+        }
+        StringWriter sw = new StringWriter();
+        HTMLWriter html = new HTMLWriter(sw);
+        html.pretty = false;
+        html.table(table);
+        html.flush();
+        assertEquals("<table><tr><td class=\"number\" align=\"right\">1</td>"
+                + "<td class=\"number\" align=\"left\" colspan=\"2\">2</td></tr></table>", sw.toString());
+    }
+    public void testSpans() {
+        Table table = new Table();
+        table.firstRowIsHeader = false;
+        table.put(1, 1, 1000, 1, "long");
+        table.put(1, 2, 2, 2, "block");
+        table.put(3, 3, "c");
+        assertEquals(1000, table.getMaxRows());
+        assertEquals(2, table.getSpanCount());
+        assertFalse(table.hasRow(500));
+        assertSame(Table.SPANNEDCELL, table.getCellAt(500, 1));
+        assertSame(Table.SPANNEDCELL, table.getCellAt(2, 3));
+        assertEquals("block", table.getCellAt(1, 2).contents);
+        assertNull(table.getCellAt(3, 2));
+        try {
+            table.put(2, 1, "x");
+            fail("covered by long");
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            table.put(2, 3, 2, 1, "x");
+            fail("overlaps block");
+        } catch (IllegalArgumentException ex) {
+        }
+        table.put(1, 2, 1, 2, "wide");
+        assertNull(table.getCellAt(2, 2));
+        StringWriter sw = new StringWriter();
+        HTMLWriter html = new HTMLWriter(sw);
+        html.pretty = false;
+        html.table(table);
+        html.flush();
+        String written = sw.toString();
+        assertTrue(written.startsWith("<table><tr><td rowspan=\"1000\">long</td><td colspan=\"2\">wide</td></tr>"
+                + "<tr><td class=\"empty\">&nbsp;</td><td class=\"empty\">&nbsp;</td></tr>"
+                + "<tr><td class=\"empty\">&nbsp;</td><td>c</td></tr>"));
+        assertTrue(written.endsWith("<tr><td class=\"empty\">&nbsp;</td><td class=\"empty\">&nbsp;</td></tr></table>"));
+
+        Table adjacent = new Table();
+        adjacent.firstRowIsHeader = false;
+        adjacent.put(1, 1, 3, 1, "Group");
+        adjacent.put(1, 2, 3, 1, "Sub");
+        adjacent.put(1, 3, "x");
+        adjacent.put(2, 3, "y");
+        adjacent.put(3, 3, "z");
+        adjacent.put(4, 1, 2, 2, "AB");
+        adjacent.put(4, 3, 2, 1, "C");
+        adjacent.put(4, 4, "d");
+        adjacent.put(5, 4, "e");
+        sw = new StringWriter();
+        html = new HTMLWriter(sw);
+        html.pretty = false;
+        html.table(adjacent);
+        html.flush();
+        assertEquals("<table><tr><td rowspan=\"3\">Group</td><td rowspan=\"3\">Sub</td><td>x</td><td class=\"empty\">&nbsp;</td></tr>"
+                + "<tr><td>y</td><td class=\"empty\">&nbsp;</td></tr><tr><td>z</td><td class=\"empty\">&nbsp;</td></tr>"
+                + "<tr><td colspan=\"2\" rowspan=\"2\">AB</td><td rowspan=\"2\">C</td><td>d</td></tr><tr><td>e</td></tr></table>", sw.toString());
+    }
+    public void testParallelRender() {
+        Table table = new Table();
+        for (int r = 1; r <= 200; r++) {
+            table.put(r, 1, "row" + r);
+            if (r % 50 == 0) {
+                Table nested = new Table();
+                for (int n = 1; n <= 30; n++)
+                    nested.put(n, 1, n);
+                table.put(r, 2, nested);
+            }
+        }
+        table.put(10, 2, 40, 2, "span");
+        ParallelTableRenderer renderer = new ParallelTableRenderer(3);
+        renderer.setRowsPerBlock(16);
+        try {
+            assertEquals(this.render(table, null), this.render(table, renderer));
+            Table adjacent = new Table();
+            adjacent.put(1, 1, 40, 1, "Group");
+            adjacent.put(1, 2, 40, 1, "Sub");
+            adjacent.put(1, 3, 20, 2, "Wide");
+            adjacent.put(21, 3, 20, 1, "Left");
+            adjacent.put(21, 4, 20, 1, "Right");
+            for (int r = 1; r <= 40; r++)
+                adjacent.put(r, 5, "row" + r);
+            String sequential = this.render(adjacent, null);
+            assertEquals(-1, sequential.indexOf("empty"));
+            assertEquals(sequential, this.render(adjacent, renderer));
+            Table dashboard = new Table();
+            dashboard.put(1, 1, table);
+            dashboard.put(1, 2, table);
+            HTMLWriter sequentialWriter = new HTMLWriter(new StringWriter());
+            HTMLWriter parallelWriter = new HTMLWriter(new StringWriter());
+            assertEquals(this.render(dashboard, null, sequentialWriter), this.render(dashboard, renderer, parallelWriter));
+            assertEquals(sequentialWriter.getElementCount(), parallelWriter.getElementCount());
+            assertEquals(sequentialWriter.getMaxDepth(), parallelWriter.getMaxDepth());
+            assertEquals(sequentialWriter.getEscapedCount(), parallelWriter.getEscapedCount());
+            HTMLWriter custom = new HTMLWriter(new StringWriter()) {
+                protected void tableEmptyCell() {
+                    this.emptytag("td");
+                }
+            };
+            String customized = this.render(table, renderer, custom);
+            assertEquals(-1, customized.indexOf("empty"));
+            assertEquals(this.render(table, null, custom), customized);
+        } finally {
+            renderer.shutdown();
+        }
+    }
+    private String render(Table table, ParallelTableRenderer rendererOrNull) {
+        return this.render(table, rendererOrNull, new HTMLWriter(new StringWriter()));
+    }
+    private String render(Table table, ParallelTableRenderer rendererOrNull, HTMLWriter html) {
+        StringWriter sw = new StringWriter();
+        html.reset(sw);
+        html.setIndentWidth(1);
+        html.tag("div");
+        if (rendererOrNull == null)
+            html.table(table);
+        else
+            rendererOrNull.table(html, table);
+        html.end();
+        html.close();
+        return sw.toString();
+    }
+}
@@ -0,0 +1,395 @@
+package com.philemonworks.writer.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import com.philemonworks.writer.BufferOutput;
+import com.philemonworks.writer.ByteBufferPool;
+import com.philemonworks.writer.CompressingChannel;
+import com.philemonworks.writer.DateTimeFormat;
+import com.philemonworks.writer.ElementStack;
+import com.philemonworks.writer.Escaper;
+import com.philemonworks.writer.HTMLWriter;
+import com.philemonworks.writer.FlushPolicy;
+import com.philemonworks.writer.Utf8Output;
+import com.philemonworks.writer.WriterOutput;
+import com.philemonworks.writer.WriterPool;
+import com.philemonworks.writer.WriterStatistics;
+import com.philemonworks.writer.XMLWriter;
+import junit.framework.TestCase;
+
+/**
+ * @author E.M.Micklei
+ *
+ */
+public class XMLWriterTest extends TestCase {
+    public void testWriter() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.tag("a").tagged("b", "x<y", true).end();
+        xml.close();
+        assertEquals("<a><b>x&#60;y</b></a>", sw.toString());
+    }
+    public void testPrintStream() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLWriter xml = new XMLWriter(new PrintStream(bos));
+        xml.tag("a").print("text").end();
+        xml.close();
+        assertEquals("<a>\n  text\n</a>\n", bos.toString());
+    }
+    public void testNullAttributes() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.tag("a", null, false).tag("b", null, true).tagged("c", null, "x", true).end();
+        xml.tagWith("d", null, true).tagWith("e", xml.attributes().add("k", "v"), true);
+        xml.flush();
+        assertEquals("<a><b/><c>x</c></a><d/><e k=\"v\"/>", sw.toString());
+    }
+    public void testManyTagNames() {
+        ElementStack stack = new ElementStack(2);
+        for (int i = 0; i < ElementStack.MAX_CACHED_CLOSERS * 3; i++) {
+            stack.push("t" + i);
+            assertEquals("</t" + i + ">", new String(stack.peekCloser()));
+            stack.pop();
+        }
+        stack.push("a");
+        stack.push("b");
+        stack.push("a");
+        assertEquals("</a>", new String(stack.peekCloser()));
+        stack.pop();
+        assertEquals("</b>", new String(stack.peekCloser()));
+    }
+    public void testEmptyStackCapacity() {
+        ElementStack stack = new ElementStack(0);
+        stack.push("a");
+        stack.push("b");
+        assertEquals("</b>", new String(stack.peekCloser()));
+        stack.pop();
+        assertEquals("</a>", new String(stack.peekCloser()));
+    }
+    public void testSmallBuffer() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(new WriterOutput(sw, 4));
+        xml.pretty = false;
+        xml.tag("element").print("some longer content").end();
+        xml.flush();
+        assertEquals("<element>some longer content</element>", sw.toString());
+    }
+    public void testEncoded() {
+        String plain = "nothing to escape";
+        assertSame(plain, XMLWriter.encoded(plain));
+        assertEquals("a&#38;b&#60;c&#62;&#34;&#10;&#233;", XMLWriter.encoded("a&b<c>\"\n\u00e9"));
+    }
+    public void testEncodeChars() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        char[] chars = "[x<y]".toCharArray();
+        xml.print(chars, 1, 3);
+        xml.flush();
+        assertEquals("x&#60;y", sw.toString());
+    }
+    public void testEscapers() {
+        String text = "caf\u00e9 <\u20ac> \ud83d\ude00\n";
+        assertEquals("caf&#233; &#60;&#8364;&#62; &#128512;&#10;", Escaper.ASCII.encoded(text));
+        assertEquals("caf\u00e9 &#60;\u20ac&#62; \ud83d\ude00\n", Escaper.UTF8.encoded(text));
+        assertEquals("caf&eacute; &lt;&euro;&gt; &#128512;\n", Escaper.HTML.encoded(text));
+    }
+    public void testSetEscaper() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.setEscaper(Escaper.UTF8);
+        xml.opentag("p").attribute("title", "\u00e9&").closetag().print("\u00fc").end();
+        xml.flush();
+        assertEquals("<p title=\"\u00e9&#38;\">\u00fc</p>", sw.toString());
+    }
+    public void testUtf8Output() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        // the surrogate pair is split over two chunks of the 16 character buffer
+        String text = "0123456789abcde\ud83d\ude00 caf\u00e9 \u20ac";
+        Utf8Output output = new Utf8Output(Channels.newChannel(bos), 16);
+        output.write(text);
+        output.write(ByteBuffer.wrap("<raw/>".getBytes("UTF-8")));
+        output.close();
+        assertEquals(text + "<raw/>", new String(bos.toByteArray(), "UTF-8"));
+    }
+    public void testUtf8OutputClosedTwice() throws Exception {
+        Utf8Output output = new Utf8Output(new ByteArrayOutputStream());
+        output.write("a");
+        output.close();
+        output.close();
+        output.write("b");
+        try {
+            output.flush();
+            fail("flushed a closed output");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        try {
+            output.write(ByteBuffer.wrap(new byte[] { 'c' }));
+            fail("wrote to a closed output");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        output.reset(bos);
+        output.write("d");
+        output.close();
+        assertEquals("d", new String(bos.toByteArray(), "UTF-8"));
+    }
+    public void testChannelWriter() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLWriter xml = new XMLWriter(Channels.newChannel(bos));
+        xml.pretty = false;
+        xml.setEscaper(Escaper.UTF8);
+        xml.tagged("p", "\u00fcber", true);
+        xml.close();
+        assertEquals("<p>\u00fcber</p>", new String(bos.toByteArray(), "UTF-8"));
+    }
+    public void testIndentation() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.setIndentWidth(4);
+        xml.setNewline("\r\n");
+        xml.tag("a").tag("b").tagged("c", 1).end().end();
+        xml.flush();
+        assertEquals("<a>\r\n    <b>\r\n        <c>1</c>\r\n    </b>\r\n</a>\r\n", sw.toString());
+    }
+    public void testDeepIndentation() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        for (int i = 0; i < 100; i++)
+            xml.tag("x");
+        xml.print("deep");
+        for (int i = 0; i < 100; i++)
+            xml.end();
+        xml.flush();
+        assertTrue(sw.toString().indexOf("\n" + spaces(200) + "deep\n") != -1);
+    }
+    private String spaces(int n) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < n; i++)
+            buffer.append(' ');
+        return buffer.toString();
+    }
+    public void testEndExpected() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.tag("table").tag("tr").emptytag("td").end(new String("tr"));
+        try {
+            xml.end("tr");
+            fail("table is open");
+        } catch (RuntimeException ex) {
+            assertEquals("closing:table but expected:tr", ex.getMessage());
+        }
+        try {
+            xml.close();
+            fail("table is open");
+        } catch (RuntimeException ex) {
+            assertEquals("One or more end-tags are missing: [table]", ex.getMessage());
+        }
+        assertEquals("<table><tr><td/></tr>", sw.toString());
+    }
+    public void testDateTimeFormat() {
+        assertEquals("1970-01-01T00:00:00Z", DateTimeFormat.format(0));
+        assertEquals("1969-12-31T23:59:59Z", DateTimeFormat.format(-1));
+        assertEquals("2000-02-29T12:34:56Z", DateTimeFormat.format(951827696000L));
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // between 1901 and 2100
+            long millis = (long) ((random.nextDouble() - 0.5) * 4.0E12 * 1.5);
+            assertEquals(reference.format(new Date(millis)), DateTimeFormat.format(millis));
+        }
+    }
+    public void testDateAttribute() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.opentag("log").attribute("at", new Date(0)).closetag();
+        xml.tagged("when", new Date(86400000L)).taggedDateTime("then", 1000L).end();
+        xml.flush();
+        assertEquals("<log at=\"1970-01-01T00:00:00Z\"><when>1970-01-02T00:00:00Z</when><then>1970-01-01T00:00:01Z</then></log>", sw.toString());
+    }
+    public void testNumbers() {
+        BufferOutput output = new BufferOutput();
+        StringBuffer expected = new StringBuffer();
+        long[] longs = { 0, -1, 9, 10, Integer.MAX_VALUE, Integer.MIN_VALUE, 12345678901L, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (int i = 0; i < longs.length; i++) {
+            output.writeLong(longs[i]);
+            output.writeInt((int) longs[i]);
+            expected.append(longs[i]).append((int) longs[i]);
+        }
+        double[] doubles = { 0.0, -0.0, 1.0, -42.0, 0.5, 9999999.0, 1.0E7, Double.NaN, Double.NEGATIVE_INFINITY };
+        for (int i = 0; i < doubles.length; i++) {
+            output.writeDouble(doubles[i]);
+            expected.append(doubles[i]);
+        }
+        assertEquals(expected.toString(), output.toString());
+    }
+    public void testNumericTags() {
+        StringWriter sw = new StringWriter();
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.opentag("m").attribute("i", -7).attribute("l", 8000000000L).attribute("d", 2.0).attribute("b", true).closetag();
+        xml.tagged("n", 1L).tagged("x", 0.25).tagged("ok", false).end();
+        xml.flush();
+        assertEquals("<m i=\"-7\" l=\"8000000000\" d=\"2.0\" b=\"true\"><n>1</n><x>0.25</x><ok>false</ok></m>", sw.toString());
+    }
+    public void testFlushPolicy() {
+        final StringBuffer flushes = new StringBuffer();
+        final StringWriter sw = new StringWriter() {
+            public void flush() {
+                flushes.append(this.getBuffer().length()).append(' ');
+            }
+            public void close() {
+                flushes.append("closed");
+            }
+        };
+        XMLWriter xml = new XMLWriter(sw);
+        xml.pretty = false;
+        xml.setFlushPolicy(FlushPolicy.atDepth(1));
+        xml.tag("root").tag("a").tagged("b", 1).end().tag("c").emptytag("d").end();
+        assertEquals("21 32 ", flushes.toString());
+        xml.setFlushPolicy(FlushPolicy.afterChars(10).orAtDepth(0));
+        xml.tag("e").end().tag("f").end().tag("g").end();
+        assertEquals("21 32 46 ", flushes.toString());
+        try {
+            xml.finish();
+            fail("root is open");
+        } catch (RuntimeException ex) {
+            assertEquals("One or more end-tags are missing: [root]", ex.getMessage());
+        }
+        xml.end();
+        xml.finish();
+        assertEquals("21 32 46 53 60 60 ", flushes.toString());
+        xml.close();
+        assertTrue(flushes.toString().endsWith("closed"));
+    }
+    public void testCompressingChannel() throws Exception {
+        for (int format = 0; format < 2; format++) {
+            // twice, the second time with a pooled Deflater
+            for (int run = 0; run < 2; run++) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                CompressingChannel channel = format == 0
+                        ? CompressingChannel.gzip(bos, Deflater.BEST_SPEED)
+                        : CompressingChannel.deflate(bos, Deflater.BEST_COMPRESSION);
+                XMLWriter xml = new XMLWriter(channel);
+                xml.setEscaper(Escaper.UTF8);
+                xml.tag("list");
+                for (int i = 0; i < 5000; i++)
+                    xml.tagged("item", "caf\u00e9 " + i, true);
+                xml.end();
+                xml.close();
+                byte[] bytes = bos.toByteArray();
+                assertEquals(bytes.length, channel.getCompressedCount());
+                assertTrue(channel.getCompressedCount() < channel.getRawCount() / 4);
+                InputStream in = new ByteArrayInputStream(bytes);
+                in = format == 0 ? (InputStream) new GZIPInputStream(in) : new InflaterInputStream(in);
+                String xmlText = new String(readAll(in), "UTF-8");
+                assertEquals(channel.getRawCount(), xmlText.getBytes("UTF-8").length);
+                assertTrue(xmlText.endsWith("<item>caf\u00e9 4999</item>\n</list>\n"));
+            }
+        }
+    }
+    private byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        for (int n = in.read(chunk); n != -1; n = in.read(chunk))
+            out.write(chunk, 0, n);
+        return out.toByteArray();
+    }
+    public void testReset() throws Exception {
+        StringWriter first = new StringWriter();
+        XMLWriter xml = new XMLWriter(first);
+        xml.pretty = false;
+        xml.tag("a").tag("b");
+        xml.flush();
+        StringWriter second = new StringWriter();
+        xml.reset(second);
+        xml.tagged("c", 1);
+        xml.finish();
+        assertEquals("<a><b>", first.toString());
+        assertEquals("<c>1</c>", second.toString());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        xml.resetUtf8(bos);
+        xml.setEscaper(Escaper.UTF8);
+        xml.tagged("d", "\u00e9", true);
+        xml.close();
+        assertEquals("<d>\u00e9</d>", new String(bos.toByteArray(), "UTF-8"));
+    }
+    public void testResetReleasesBuffer() {
+        XMLWriter xml = new XMLWriter(Channels.newChannel(new ByteArrayOutputStream()));
+        int idle = ByteBufferPool.getIdleCount();
+        xml.reset(new StringWriter());
+        assertEquals(idle + 1, ByteBufferPool.getIdleCount());
+        xml.resetUtf8(new ByteArrayOutputStream());
+        assertEquals(idle, ByteBufferPool.getIdleCount());
+        xml.reset(new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(idle + 1, ByteBufferPool.getIdleCount());
+    }
+    public void testWriterPool() throws Exception {
+        WriterPool pool = new WriterPool(HTMLWriter.class, 1);
+        StringWriter sw = new StringWriter();
+        HTMLWriter html = (HTMLWriter) pool.acquire(sw);
+        html.pretty = false;
+        html.tag("p").end();
+        html.finish();
+        pool.release(html);
+        pool.release(new HTMLWriter(new StringWriter()));
+        assertEquals(1, pool.size());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        assertSame(html, pool.acquireUtf8(bos));
+        html.bold("x");
+        html.finish();
+        assertEquals("<p></p>", sw.toString());
+        assertEquals("<b>x</b>", bos.toString("UTF-8"));
+        try {
+            new WriterPool(String.class, 1);
+            fail("not a writer");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+    public void testStatistics() throws Exception {
+        WriterStatistics statistics = new WriterStatistics();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLWriter xml = new XMLWriter(Channels.newChannel(bos));
+        xml.pretty = false;
+        xml.setMetrics(statistics);
+        xml.tag("a").tag("b").emptytag("c").end().tagged("d", "<\u00e9>", true).end();
+        xml.finish();
+        assertEquals(4, xml.getElementCount());
+        assertEquals(3, xml.getMaxDepth());
+        assertEquals(3, xml.getEscapedCount());
+        xml.reset(new StringWriter());
+        xml.tagged("e", 1);
+        xml.finish();
+        xml.close();
+        assertEquals(2, statistics.getDocumentCount());
+        assertEquals(5, statistics.getElementCount());
+        assertEquals(3, statistics.getMaxDepth());
+        assertEquals(3, statistics.getEscapedCount());
+        assertEquals(bos.size() + "<e>1</e>".length(), statistics.getCharCount());
+        assertEquals(bos.size(), statistics.getByteCount());
+        assertEquals(bos.size(), statistics.getMaxDocumentChars());
+        assertEquals(2, statistics.getFlushCount());
+        statistics.reset();
+        assertEquals(0, statistics.getDocumentCount());
+    }
+}